@@ -0,0 +1,73 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试用的数据，字段长度与线上数据接近
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    public static Shop shop(long id) {
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName("103茶餐厅" + id);
+        shop.setTypeId(1L);
+        shop.setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg");
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        shop.setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        return shop;
+    }
+
+    public static List<Shop> shops(int count) {
+        List<Shop> shops = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            shops.add(shop(id));
+        }
+        return shops;
+    }
+
+    /**
+     * 首页的店铺类型列表，与线上的10个类型一致
+     */
+    public static List<ShopType> shopTypes() {
+        String[] names = {"美食", "KTV", "丽人·美发", "健身运动", "按摩·足疗", "美容SPA", "亲子游乐", "酒吧", "轰趴馆", "美睫·美甲"};
+        List<ShopType> types = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            ShopType type = new ShopType();
+            type.setId((long) i + 1);
+            type.setName(names[i]);
+            type.setIcon("/types/ms.png");
+            type.setSort(i + 1);
+            type.setCreateTime(LocalDateTime.of(2021, 12, 22, 20, 17, 47));
+            type.setUpdateTime(LocalDateTime.of(2021, 12, 23, 11, 24, 31));
+            types.add(type);
+        }
+        return types;
+    }
+
+    public static UserDTO user(long id) {
+        UserDTO user = new UserDTO();
+        user.setId(id);
+        user.setNickName("user_" + id);
+        user.setIcon("/imgs/icons/kksdjfkhsdkf.jpg");
+        return user;
+    }
+}
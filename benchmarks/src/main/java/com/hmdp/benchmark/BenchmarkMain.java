@@ -0,0 +1,42 @@
+package com.hmdp.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口，默认运行全部基准测试，结果以JSON格式写入jmh-result.json，便于对比不同版本
+ * 支持JMH的全部命令行参数，例如：java -jar benchmarks.jar CacheClientBenchmark -p localCache=true -rf csv -rff result.csv
+ * 需要真实redis的基准测试默认不运行，在命令行中指定名称时才运行
+ */
+public class BenchmarkMain {
+
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+    private static final String REQUIRES_REDIS = LockContentionBenchmark.class.getSimpleName();
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldList()) {
+            new Runner(commandLine).list();
+            return;
+        }
+        // 命令行没有指定时才使用默认的输出格式和文件
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        if (commandLine.getIncludes().isEmpty()) {
+            options.exclude(REQUIRES_REDIS);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,123 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.BloomFilterRegistry;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.CacheCodecs;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.CacheRebuildSignal;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.LocalCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+
+/**
+ * CacheClient的三种查询方式，缓存已预热，测的是命中路径
+ * localCache=true时为店铺前缀开启本地缓存，对比只走redis的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CacheClientBenchmark {
+
+    private static final int SHOP_COUNT = 1000;
+    private static final String LOGICAL_SHOP_KEY = "cache:shop:logical:";
+
+    @Param({"false", "true"})
+    private boolean localCache;
+
+    @Param({"json", "binary"})
+    private String codec;
+
+    private CacheClient cacheClient;
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    private ShopMapper shopMapper;
+
+    @Setup
+    public void setup() {
+        //1. 组装CacheClient，listener container不启动，不会收到广播
+        InMemoryRedisTemplate template = new InMemoryRedisTemplate();
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        LocalCache local = new LocalCache(template, container, new HotKeyDetector(100, 20));
+        if (localCache) {
+            local.register(CACHE_SHOP_KEY, 10000, 10, TimeUnit.MINUTES);
+        }
+        List<CacheCodec> codecs = Arrays.asList(new JsonCacheCodec(), new BinaryCacheCodec());
+        cacheRebuildExecutor = new CacheRebuildExecutor();
+        cacheClient = new CacheClient(template, local, new BloomFilterRegistry(template, container),
+                new CacheCodecs(codecs, codec), new CacheRebuildSignal(template, container),
+                cacheRebuildExecutor, new CacheMetrics());
+        //2. 准备数据库和缓存
+        List<Shop> shops = BenchmarkData.shops(SHOP_COUNT);
+        shopMapper = InMemoryMapper.create(ShopMapper.class, Shop::getId, shops);
+        for (Shop shop : shops) {
+            cacheClient.set(CACHE_SHOP_KEY + shop.getId(), shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            cacheClient.setWithLogicalExpire(LOGICAL_SHOP_KEY + shop.getId(), shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        }
+        //3. 不存在的id写入空值
+        for (long id = SHOP_COUNT + 1; id <= SHOP_COUNT * 2; id++) {
+            cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, shopMapper::selectById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        cacheRebuildExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Shop passThrough() {
+        return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, randomId(), Shop.class,
+                shopMapper::selectById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop passThroughNull() {
+        return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, randomId() + SHOP_COUNT, Shop.class,
+                shopMapper::selectById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop mutex() {
+        return cacheClient.queryWithMutex(CACHE_SHOP_KEY, LOCK_SHOP_KEY, randomId(), Shop.class,
+                shopMapper::selectById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop logicalExpire() {
+        return cacheClient.queryWithLogicalExpire(LOGICAL_SHOP_KEY, LOCK_SHOP_KEY, randomId(), Shop.class,
+                shopMapper::selectById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    private static Long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, SHOP_COUNT + 1);
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.lang.TypeReference;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编解码器对比：Shop和List&lt;ShopType&gt;在json和binary两种编码下的编解码耗时和数据大小
+ * 数据大小通过辅助计数器payloadBytes输出，与耗时一起写入结果文件
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CacheCodecBenchmark {
+
+    private static final Type SHOP_TYPE_LIST = new TypeReference<List<ShopType>>() {}.getType();
+
+    @Param({"json", "binary"})
+    private String codec;
+
+    @Param({"shop", "shopTypes"})
+    private String payload;
+
+    private CacheCodec cacheCodec;
+    private Object value;
+    private Type type;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        cacheCodec = "binary".equals(codec) ? new BinaryCacheCodec() : new JsonCacheCodec();
+        if ("shop".equals(payload)) {
+            value = BenchmarkData.shop(1);
+            type = Shop.class;
+        } else {
+            value = BenchmarkData.shopTypes();
+            type = SHOP_TYPE_LIST;
+        }
+        bytes = cacheCodec.encode(value);
+        // 编解码结果不一致时测出的耗时没有意义，直接失败
+        Object decoded = cacheCodec.decode(bytes, type);
+        if (!Objects.equals(value, decoded)) {
+            throw new IllegalStateException(codec + "编解码结果不一致：" + payload);
+        }
+    }
+
+    /**
+     * 编码后的字节数，每次迭代开始时清零，单线程运行时即为一次编码的大小
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long payloadBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            payloadBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(PayloadSize size) {
+        byte[] encoded = cacheCodec.encode(value);
+        size.payloadBytes = encoded.length;
+        return encoded;
+    }
+
+    @Benchmark
+    public Object decode() {
+        return cacheCodec.decode(bytes, type);
+    }
+}
@@ -0,0 +1,70 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.utils.IdWorker;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SnowflakeIdWorker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单id生成
+ * redis：每个id自增一次；segment：号段模式；snowflake：不依赖redis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IdWorkerBenchmark {
+
+    @Param({"redis", "segment", "snowflake"})
+    private String mode;
+
+    private IdWorker idWorker;
+
+    @Setup
+    public void setup() {
+        InMemoryRedisTemplate template = new InMemoryRedisTemplate();
+        switch (mode) {
+            case "redis":
+                idWorker = new RedisIdWorker(template, 0, 0.2);
+                break;
+            case "segment":
+                idWorker = new RedisIdWorker(template, 1000, 0.2);
+                break;
+            case "snowflake":
+                SnowflakeIdWorker snowflake = new SnowflakeIdWorker(template);
+                // 租用机器id
+                ReflectUtil.invoke(snowflake, "init");
+                idWorker = snowflake;
+                break;
+            default:
+                throw new IllegalArgumentException("未知的id生成方式：" + mode);
+        }
+    }
+
+    @Benchmark
+    public long nextId() {
+        return idWorker.nextId("order");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long nextIdContended() {
+        return idWorker.nextId("order");
+    }
+}
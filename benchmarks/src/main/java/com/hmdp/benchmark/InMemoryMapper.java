@@ -0,0 +1,63 @@
+package com.hmdp.benchmark;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 基于内存的Mapper，用于基准测试
+ * 按主键保存在ConcurrentHashMap中，只实现selectById、selectBatchIds、insert、updateById、deleteById，
+ * 其他方法（条件查询、xml中的自定义sql）直接抛出UnsupportedOperationException
+ */
+public final class InMemoryMapper {
+
+    private InMemoryMapper() {
+    }
+
+    /**
+     * @param mapperType Mapper接口，例如ShopMapper
+     * @param idGetter 获取主键
+     * @param rows 初始数据
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, M extends BaseMapper<T>> M create(Class<M> mapperType, Function<T, Serializable> idGetter, Collection<T> rows) {
+        Map<Serializable, T> table = new ConcurrentHashMap<>();
+        rows.forEach(row -> table.put(idGetter.apply(row), row));
+        return (M) Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[]{mapperType}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "selectById":
+                    return table.get((Serializable) args[0]);
+                case "selectBatchIds":
+                    List<T> list = new ArrayList<>();
+                    for (Object id : (Collection<?>) args[0]) {
+                        T row = table.get((Serializable) id);
+                        if (row != null) {
+                            list.add(row);
+                        }
+                    }
+                    return list;
+                case "insert":
+                    return table.putIfAbsent(idGetter.apply((T) args[0]), (T) args[0]) == null ? 1 : 0;
+                case "updateById":
+                    return table.replace(idGetter.apply((T) args[0]), (T) args[0]) == null ? 0 : 1;
+                case "deleteById":
+                    return table.remove((Serializable) args[0]) == null ? 0 : 1;
+                case "toString":
+                    return "InMemoryMapper(" + mapperType.getSimpleName() + ")";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException("InMemoryMapper不支持的方法：" + method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,315 @@
+package com.hmdp.benchmark;
+
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于内存的StringRedisTemplate，用于基准测试
+ * 所有命令都落到一个ConcurrentHashMap上，只实现被测代码用到的string、hash、bit命令和管道，
+ * 不模拟过期时间，lua脚本等其他命令直接抛出UnsupportedOperationException。
+ * 测出的是业务代码自身（序列化、拼接key、本地缓存等）的开销，不包含网络往返
+ */
+public class InMemoryRedisTemplate extends StringRedisTemplate {
+
+    /**
+     * key -> byte[]（string）或 Map&lt;String, byte[]&gt;（hash）
+     * 用ISO_8859_1在字节和字符串之间转换，任意字节都能原样还原
+     */
+    private final Map<String, Object> data = new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程打开的管道，保存各命令的返回值
+     */
+    private final ThreadLocal<List<Object>> pipelines = new ThreadLocal<>();
+
+    private final RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(
+            RedisConnection.class.getClassLoader(), new Class<?>[]{RedisConnection.class}, new Handler());
+
+    @Override
+    public <T> T execute(RedisCallback<T> action, boolean exposeConnection, boolean pipeline) {
+        return action.doInRedis(connection);
+    }
+
+    /**
+     * 清空所有数据
+     */
+    public void flushAll() {
+        data.clear();
+    }
+
+    private class Handler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+                case "openPipeline":
+                    pipelines.set(new ArrayList<>());
+                    return null;
+                case "closePipeline":
+                    List<Object> results = pipelines.get();
+                    pipelines.remove();
+                    return results == null ? Collections.emptyList() : results;
+                case "isPipelined":
+                    return pipelines.get() != null;
+                case "isQueueing":
+                case "isClosed":
+                    return false;
+                case "close":
+                    return null;
+                case "toString":
+                    return "InMemoryRedisConnection";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    break;
+            }
+            Object result = dispatch(name, args);
+            List<Object> pipeline = pipelines.get();
+            if (pipeline == null) {
+                return result;
+            }
+            // 管道中的命令返回null，结果在closePipeline时统一返回
+            if (method.getReturnType() != void.class) {
+                pipeline.add(result);
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object dispatch(String name, Object[] args) {
+            switch (name) {
+                // string
+                case "get":
+                    return string(args[0]);
+                case "set":
+                    return set((byte[]) args[0], (byte[]) args[1],
+                            args.length > 3 ? (RedisStringCommands.SetOption) args[3] : RedisStringCommands.SetOption.upsert());
+                case "setNX":
+                    return set((byte[]) args[0], (byte[]) args[1], RedisStringCommands.SetOption.ifAbsent());
+                case "setEx":
+                case "pSetEx":
+                    return set((byte[]) args[0], (byte[]) args[2], RedisStringCommands.SetOption.upsert());
+                case "getSet":
+                    return data.put(key(args[0]), args[1]);
+                case "mGet":
+                    byte[][] keys = (byte[][]) args[0];
+                    List<byte[]> values = new ArrayList<>(keys.length);
+                    for (byte[] key : keys) {
+                        values.add(string(key));
+                    }
+                    return values;
+                case "incr":
+                    return incrBy(args[0], 1);
+                case "incrBy":
+                    return incrBy(args[0], number(args[1]));
+                case "decr":
+                    return incrBy(args[0], -1);
+                case "decrBy":
+                    return incrBy(args[0], -number(args[1]));
+                // key
+                case "del":
+                case "unlink":
+                    long removed = 0;
+                    for (byte[] key : (byte[][]) args[0]) {
+                        if (data.remove(key(key)) != null) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                case "exists":
+                    if (args[0] instanceof byte[][]) {
+                        return Arrays.stream((byte[][]) args[0]).filter(key -> data.containsKey(key(key))).count();
+                    }
+                    return data.containsKey(key(args[0]));
+                case "expire":
+                case "pExpire":
+                case "expireAt":
+                case "pExpireAt":
+                case "persist":
+                    return data.containsKey(key(args[0]));
+                case "ttl":
+                case "pTtl":
+                    return data.containsKey(key(args[0])) ? -1L : -2L;
+                // hash
+                case "hSet":
+                    return hash(args[0], true).put(key(args[1]), (byte[]) args[2]) == null;
+                case "hSetNX":
+                    return hash(args[0], true).putIfAbsent(key(args[1]), (byte[]) args[2]) == null;
+                case "hMSet":
+                    Map<String, byte[]> hash = hash(args[0], true);
+                    ((Map<byte[], byte[]>) args[1]).forEach((field, value) -> hash.put(key(field), value));
+                    return null;
+                case "hGet":
+                    return hash(args[0], false).get(key(args[1]));
+                case "hMGet":
+                    Map<String, byte[]> source = hash(args[0], false);
+                    byte[][] fields = (byte[][]) args[1];
+                    List<byte[]> fieldValues = new ArrayList<>(fields.length);
+                    for (byte[] field : fields) {
+                        fieldValues.add(source.get(key(field)));
+                    }
+                    return fieldValues;
+                case "hGetAll":
+                    Map<byte[], byte[]> entries = new LinkedHashMap<>();
+                    hash(args[0], false).forEach((field, value) -> entries.put(bytes(field), value));
+                    return entries;
+                case "hDel":
+                    Map<String, byte[]> target = hash(args[0], false);
+                    long deleted = 0;
+                    for (byte[] field : (byte[][]) args[1]) {
+                        if (target.remove(key(field)) != null) {
+                            deleted++;
+                        }
+                    }
+                    return deleted;
+                case "hIncrBy":
+                    long delta = number(args[2]);
+                    byte[] incremented = hash(args[0], true).merge(key(args[1]), bytes(String.valueOf(delta)),
+                            (old, value) -> bytes(String.valueOf(Long.parseLong(key(old)) + delta)));
+                    return Long.parseLong(key(incremented));
+                case "hLen":
+                    return (long) hash(args[0], false).size();
+                case "hExists":
+                    return hash(args[0], false).containsKey(key(args[1]));
+                // bit
+                case "setBit":
+                    return setBit(key(args[0]), (Long) args[1], (Boolean) args[2]);
+                case "getBit":
+                    return bit(string(args[0]), (Long) args[1]) == 1;
+                case "bitField":
+                    return bitField(string(args[0]), (BitFieldSubCommands) args[1]);
+                // pub/sub，没有订阅者
+                case "publish":
+                    return 0L;
+                case "flushDb":
+                case "flushAll":
+                    data.clear();
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("InMemoryRedisTemplate不支持的命令：" + name);
+            }
+        }
+    }
+
+    private Boolean set(byte[] key, byte[] value, RedisStringCommands.SetOption option) {
+        switch (option) {
+            case SET_IF_ABSENT:
+                return data.putIfAbsent(key(key), value) == null;
+            case SET_IF_PRESENT:
+                return data.computeIfPresent(key(key), (k, old) -> value) != null;
+            default:
+                data.put(key(key), value);
+                return true;
+        }
+    }
+
+    private byte[] string(Object key) {
+        Object value = data.get(key(key));
+        if (value != null && !(value instanceof byte[])) {
+            throw new IllegalStateException("WRONGTYPE " + key(key));
+        }
+        return (byte[]) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> hash(Object key, boolean create) {
+        Object value = create
+                ? data.computeIfAbsent(key(key), k -> new ConcurrentHashMap<String, byte[]>())
+                : data.getOrDefault(key(key), Collections.emptyMap());
+        if (!(value instanceof Map)) {
+            throw new IllegalStateException("WRONGTYPE " + key(key));
+        }
+        return (Map<String, byte[]>) value;
+    }
+
+    private Long incrBy(Object key, long delta) {
+        byte[] value = (byte[]) data.merge(key(key), bytes(String.valueOf(delta)),
+                (old, init) -> bytes(String.valueOf(Long.parseLong(key(old)) + delta)));
+        return Long.parseLong(key(value));
+    }
+
+    private Boolean setBit(String key, long offset, boolean value) {
+        boolean[] old = new boolean[1];
+        data.compute(key, (k, current) -> {
+            byte[] bits = (byte[]) current;
+            int index = (int) (offset >>> 3);
+            if (bits == null || bits.length <= index) {
+                bits = bits == null ? new byte[index + 1] : Arrays.copyOf(bits, index + 1);
+            }
+            int mask = 0x80 >>> (offset & 7);
+            old[0] = (bits[index] & mask) != 0;
+            bits[index] = (byte) (value ? bits[index] | mask : bits[index] & ~mask);
+            return bits;
+        });
+        return old[0];
+    }
+
+    /**
+     * 与redis相同，offset 0 是第一个字节的最高位
+     */
+    private static int bit(byte[] bits, long offset) {
+        int index = (int) (offset >>> 3);
+        if (bits == null || bits.length <= index) {
+            return 0;
+        }
+        return (bits[index] >>> (7 - (offset & 7))) & 1;
+    }
+
+    /**
+     * 只支持GET子命令
+     */
+    private static List<Long> bitField(byte[] bits, BitFieldSubCommands subCommands) {
+        List<Long> results = new ArrayList<>();
+        for (BitFieldSubCommands.BitFieldSubCommand subCommand : subCommands) {
+            if (!"GET".equals(subCommand.getCommand())) {
+                throw new UnsupportedOperationException("InMemoryRedisTemplate不支持的BITFIELD子命令：" + subCommand.getCommand());
+            }
+            BitFieldSubCommands.BitFieldType type = subCommand.getType();
+            BitFieldSubCommands.Offset offset = subCommand.getOffset();
+            int width = type.getBits();
+            long start = offset.isZeroBased() ? offset.getValue() : offset.getValue() * width;
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                value = value << 1 | bit(bits, start + i);
+            }
+            if (type.isSigned() && width < 64 && (value >>> (width - 1) & 1) == 1) {
+                value |= -1L << width;
+            }
+            results.add(value);
+        }
+        return results;
+    }
+
+    private static long number(Object value) {
+        if (!(value instanceof Long) && !(value instanceof Integer)) {
+            throw new UnsupportedOperationException("InMemoryRedisTemplate只支持整数自增");
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static String key(Object bytes) {
+        return new String((byte[]) bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,47 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.Shop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 店铺数据的hutool json序列化，与缓存、接口返回使用同样的方式
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonBenchmark {
+
+    private Shop shop;
+    private String json;
+
+    @Setup
+    public void setup() {
+        shop = BenchmarkData.shop(1);
+        json = JSONUtil.toJsonStr(shop);
+    }
+
+    @Benchmark
+    public String encode() {
+        return JSONUtil.toJsonStr(shop);
+    }
+
+    @Benchmark
+    public Shop decode() {
+        return JSONUtil.toBean(json, Shop.class);
+    }
+}
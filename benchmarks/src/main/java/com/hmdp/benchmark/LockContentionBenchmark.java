@@ -0,0 +1,100 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.RedisLockFactory;
+import com.hmdp.utils.RedisReentrantLock;
+import com.hmdp.utils.SimpleRedisLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程争抢同一把锁时的加锁等待时间
+ * simple：SimpleRedisLock获取失败后休眠重试；reentrant：RedisReentrantLock订阅解锁通知等待
+ * 锁依赖lua脚本和发布订阅，需要真实的redis，默认不运行，需要显式指定：
+ * java -jar benchmarks.jar LockContentionBenchmark -p redisHost=127.0.0.1 -p redisPort=6379
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(16)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class LockContentionBenchmark {
+
+    private static final String LOCK_NAME = "bench:contention";
+
+    @Param({"simple", "reentrant"})
+    private String lock;
+
+    @Param("127.0.0.1")
+    private String redisHost;
+
+    @Param("6379")
+    private int redisPort;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisMessageListenerContainer container;
+    private StringRedisTemplate template;
+    private RedisLockFactory lockFactory;
+
+    @Setup
+    public void setup() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(redisHost, redisPort));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+        lockFactory = new RedisLockFactory(template, container);
+        // 订阅解锁通知
+        ReflectUtil.invoke(lockFactory, "init");
+        template.delete("lock:" + LOCK_NAME);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        template.delete("lock:" + LOCK_NAME);
+        ReflectUtil.invoke(lockFactory, "destroy");
+        container.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public void acquireAndRelease() throws InterruptedException {
+        ILock acquired;
+        if ("simple".equals(lock)) {
+            // 获取失败立即返回，只能休眠重试
+            acquired = new SimpleRedisLock(LOCK_NAME, template);
+            while (!acquired.tryLock(10)) {
+                Thread.sleep(1);
+            }
+        } else {
+            RedisReentrantLock reentrant = lockFactory.getLock(LOCK_NAME);
+            while (!reentrant.tryLock(10, TimeUnit.SECONDS)) {
+                Thread.yield();
+            }
+            acquired = reentrant;
+        }
+        acquired.unlock();
+    }
+}
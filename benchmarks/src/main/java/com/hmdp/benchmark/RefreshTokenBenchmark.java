@@ -0,0 +1,72 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import com.hmdp.utils.RefreshTokenInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+
+/**
+ * 每个请求都会经过的token刷新拦截器：读取登录用户的hash，fillBeanWithMap转为UserDTO，刷新有效期
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RefreshTokenBenchmark {
+
+    private static final String TOKEN = "4c6a6ba27b4f4b5f9d6c2e1e0f3a7b8c";
+
+    private RefreshTokenInterceptor interceptor;
+    private MockHttpServletRequest loggedIn;
+    private MockHttpServletRequest anonymous;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() {
+        InMemoryRedisTemplate template = new InMemoryRedisTemplate();
+        // 与登录时写入的格式相同
+        Map<String, Object> userMap = BeanUtil.beanToMap(BenchmarkData.user(1), new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+        template.opsForHash().putAll(LOGIN_USER_KEY + TOKEN, userMap);
+        interceptor = new RefreshTokenInterceptor(template);
+        loggedIn = new MockHttpServletRequest();
+        loggedIn.addHeader("authorization", TOKEN);
+        anonymous = new MockHttpServletRequest();
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public boolean loggedIn() throws Exception {
+        boolean result = interceptor.preHandle(loggedIn, response, null);
+        interceptor.afterCompletion(loggedIn, response, null, null);
+        return result;
+    }
+
+    @Benchmark
+    public boolean anonymous() throws Exception {
+        boolean result = interceptor.preHandle(anonymous, response, null);
+        interceptor.afterCompletion(anonymous, response, null, null);
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.service.impl.UserServiceImpl;
+import com.hmdp.utils.UserHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.USER_SIGN_KEY;
+
+/**
+ * 连续签到天数统计：BITFIELD取出本月截止今天的签到记录后逐位计数
+ * 本月每天都已签到，循环次数最多
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SignCountBenchmark {
+
+    private UserServiceImpl userService;
+
+    /**
+     * UserHolder是ThreadLocal，Scope.Thread的Setup在执行基准测试的线程中运行
+     */
+    @Setup
+    public void setup() {
+        InMemoryRedisTemplate template = new InMemoryRedisTemplate();
+        userService = new UserServiceImpl();
+        ReflectUtil.setFieldValue(userService, "stringRedisTemplate", template);
+        UserDTO user = BenchmarkData.user(1);
+        UserHolder.saveUser(user);
+        LocalDateTime now = LocalDateTime.now();
+        String key = USER_SIGN_KEY + user.getId() + now.format(DateTimeFormatter.ofPattern(":yyyyMM"));
+        for (int day = 0; day < now.getDayOfMonth(); day++) {
+            template.opsForValue().setBit(key, day, true);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    @Benchmark
+    public Result signCount() {
+        return userService.signCount();
+    }
+}
@@ -0,0 +1,47 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.User;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import com.hmdp.utils.BloomFilterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_BLOOM_FPP;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+
+/**
+ * 启动时从数据库分页加载id，构建各缓存的布隆过滤器
+ */
+@Component
+@RequiredArgsConstructor
+public class BloomFilterInitializer implements ApplicationRunner {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final BloomFilterRegistry bloomFilterRegistry;
+    private final ShopMapper shopMapper;
+    private final UserMapper userMapper;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 预留一倍空间给新增的店铺
+        long shopCount = shopMapper.selectCount(null);
+        bloomFilterRegistry.build(CACHE_SHOP_KEY, Math.max(PAGE_SIZE, shopCount * 2), CACHE_BLOOM_FPP,
+                lastId -> shopMapper.selectObjs(new QueryWrapper<Shop>()
+                                .select("id").gt("id", lastId).orderByAsc("id").last("limit " + PAGE_SIZE))
+                        .stream().map(id -> ((Number) id).longValue()).collect(Collectors.toList()));
+        long userCount = userMapper.selectCount(null);
+        bloomFilterRegistry.build(CACHE_USER_KEY, Math.max(PAGE_SIZE, userCount * 2), CACHE_BLOOM_FPP,
+                lastId -> userMapper.selectObjs(new QueryWrapper<User>()
+                                .select("id").gt("id", lastId).orderByAsc("id").last("limit " + PAGE_SIZE))
+                        .stream().map(id -> ((Number) id).longValue()).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,25 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.LocalCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+@Configuration
+@RequiredArgsConstructor
+public class CacheConfig {
+
+    private final LocalCache localCache;
+
+    /**
+     * 开启本地缓存的key前缀，未注册的前缀只走Redis
+     */
+    @PostConstruct
+    public void registerLocalCaches() {
+        localCache.register(CACHE_SHOP_KEY, CACHE_SHOP_LOCAL_SIZE, CACHE_SHOP_LOCAL_TTL, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,174 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时预热缓存：分页读取店铺、店铺类型和未结束的秒杀券，通过管道批量写入redis
+ * ApplicationRunner在应用发布就绪事件之前执行，预热完成后才开始接收流量
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class CacheWarmer implements ApplicationRunner {
+
+    private final IShopService shopService;
+    private final IShopTypeService shopTypeService;
+    private final ISeckillVoucherService seckillVoucherService;
+    private final CacheClient cacheClient;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.cache.warmup.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每批写入的key数量
+     */
+    @Value("${hmdp.cache.warmup.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 只预热销量最高的N家店铺，0代表全部
+     */
+    @Value("${hmdp.cache.warmup.shop-top-n:0}")
+    private long shopTopN;
+
+    /**
+     * 每秒最多写入的key数量
+     */
+    @Value("${hmdp.cache.warmup.rate:5000}")
+    private long rate;
+
+    private long startNanos;
+    private long written;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        written = 0;
+        try {
+            warmUpShops();
+            warmUpShopTypes();
+            warmUpSeckillStock();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("缓存预热被中断，已写入：{}", written);
+            return;
+        }
+        log.info("缓存预热完成，共写入：{}，耗时：{}ms", written, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private void warmUpShops() throws InterruptedException {
+        long begin = System.nanoTime();
+        long count = 0;
+        long lastId = 0;
+        long current = 1;
+        while (shopTopN <= 0 || count < shopTopN) {
+            //1. 分页查询：指定了N时按销量倒序，否则按id顺序遍历全表
+            List<Shop> shops;
+            if (shopTopN > 0) {
+                shops = shopService.query().orderByDesc("sold").orderByAsc("id")
+                        .page(new Page<>(current++, batchSize, false)).getRecords();
+                if (shops.size() > shopTopN - count) {
+                    shops = shops.subList(0, (int) (shopTopN - count));
+                }
+            } else {
+                shops = shopService.query().gt("id", lastId).orderByAsc("id").last("limit " + batchSize).list();
+            }
+            if (shops.isEmpty()) {
+                break;
+            }
+            //2. 管道批量写入
+            Map<String, Shop> values = new LinkedHashMap<>();
+            for (Shop shop : shops) {
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            cacheClient.setBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            lastId = shops.get(shops.size() - 1).getId();
+            count += shops.size();
+            log.info("缓存预热进度，店铺：{}", count);
+            //3. 限速
+            throttle(shops.size());
+            if (shops.size() < batchSize) {
+                break;
+            }
+        }
+        log.info("店铺缓存预热完成，数量：{}，耗时：{}ms", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+
+    private void warmUpShopTypes() throws InterruptedException {
+        long begin = System.nanoTime();
+        //店铺类型整体缓存在一个key中，未命中时queryTypeList会查询数据库并写入
+        stringRedisTemplate.delete(CACHE_SHOP_TYPE_KEY);
+        shopTypeService.queryTypeList();
+        throttle(1);
+        log.info("店铺类型缓存预热完成，耗时：{}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+
+    private void warmUpSeckillStock() throws InterruptedException {
+        long begin = System.nanoTime();
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            //1. 只查询尚未结束的秒杀券
+            List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                    .gt("voucher_id", lastId).gt("end_time", LocalDateTime.now())
+                    .orderByAsc("voucher_id").last("limit " + batchSize).list();
+            if (vouchers.isEmpty()) {
+                break;
+            }
+            //2. 管道批量写入库存和秒杀时间，redis中已有的库存可能比数据库更新，不覆盖
+            seckillVoucherService.loadToRedis(vouchers, false);
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            count += vouchers.size();
+            log.info("缓存预热进度，秒杀库存：{}", count);
+            //3. 限速
+            throttle(vouchers.size());
+            if (vouchers.size() < batchSize) {
+                break;
+            }
+        }
+        log.info("秒杀库存预热完成，数量：{}，耗时：{}ms", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+
+    /**
+     * 按每秒写入数量限速，写得比预期快时休眠补齐
+     */
+    private void throttle(int size) throws InterruptedException {
+        written += size;
+        if (rate <= 0) {
+            return;
+        }
+        long expectedNanos = TimeUnit.SECONDS.toNanos(written) / rate;
+        long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.TieredLockFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * 运行统计，需要登录后访问
+ * </p>
+ */
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private TieredLockFactory tieredLockFactory;
+
+    @Resource
+    private SeckillAdmission seckillAdmission;
+
+    /**
+     * 按keyPrefix统计的缓存命中率、重建耗时和数据大小，以及异步重建线程池状态
+     */
+    @GetMapping("/cache")
+    public Result cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("prefixes", cacheMetrics.snapshot());
+        stats.put("rebuildExecutor", cacheRebuildExecutor.stats());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 当前窗口的热点key，按估计访问量倒序
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.hotKeys());
+    }
+
+    /**
+     * 秒杀订单消息队列的积压量、未确认消息数和批量写入的批大小
+     */
+    @GetMapping("/orders")
+    public Result orderStats() {
+        return Result.ok(voucherOrderService.orderStreamStats());
+    }
+
+    /**
+     * 下单锁的本地锁和分布式锁各自的竞争情况
+     */
+    @GetMapping("/locks")
+    public Result lockStats() {
+        return Result.ok(tieredLockFactory.stats());
+    }
+
+    /**
+     * 秒杀准入控制的放行和拒绝次数
+     */
+    @GetMapping("/admission")
+    public Result admissionStats() {
+        return Result.ok(seckillAdmission.stats());
+    }
+}
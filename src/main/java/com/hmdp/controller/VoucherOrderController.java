@@ -1,14 +1,24 @@
 package com.hmdp.controller;
 
 
+import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.IdempotencyTokens;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillVoucherStates;
+import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
+
 /**
  * <p>
  * 前端控制器
@@ -23,9 +33,72 @@ import org.springframework.web.bind.annotation.RestController;
 public class VoucherOrderController {
 
     private final IVoucherOrderService voucherOrderService;
+    private final SeckillAdmission seckillAdmission;
+    private final SeckillVoucherStates seckillVoucherStates;
+    private final IdempotencyTokens idempotencyTokens;
+
+    /**
+     * 下单凭证的请求头
+     */
+    private static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
+
+    /**
+     * 领取下单凭证，超时重试时带上同一个凭证
+     */
+    @GetMapping("seckill/token/{id}")
+    public Result seckillToken(@PathVariable("id") Long voucherId) {
+        return Result.ok(idempotencyTokens.issue(UserHolder.getUser().getId(), voucherId));
+    }
+
+    /**
+     * 查询秒杀订单的处理结果
+     */
+    @GetMapping("seckill/order/{orderId}")
+    public Result querySeckillOrder(@PathVariable("orderId") Long orderId) {
+        return voucherOrderService.querySeckillOrder(orderId);
+    }
 
     @PostMapping("seckill/{id}")
-    public Result seckillVoucher(@PathVariable("id") Long voucherId) {
-        return voucherOrderService.seckillVoucher(voucherId);
+    public Result seckillVoucher(@PathVariable("id") Long voucherId,
+                                 @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String token,
+                                 HttpServletResponse response) {
+        Long userId = UserHolder.getUser().getId();
+        // 1.带凭证的重试请求直接返回第一次的结果
+        if (StrUtil.isNotBlank(token)) {
+            Result previous = idempotencyTokens.claim(userId, voucherId, token);
+            if (previous != null) {
+                return previous;
+            }
+        }
+        // 2.已售罄、未开始或已结束的券直接拒绝，只查询内存，不占用准入名额
+        int state = seckillVoucherStates.check(voucherId);
+        if (state != SeckillVoucherStates.AVAILABLE) {
+            if (StrUtil.isNotBlank(token)) {
+                idempotencyTokens.release(userId, voucherId, token);
+            }
+            return Result.fail(SeckillVoucherStates.failMessage(state));
+        }
+        // 3.准入控制，超出限流的请求直接拒绝
+        if (!seckillAdmission.tryAdmit(voucherId)) {
+            if (StrUtil.isNotBlank(token)) {
+                idempotencyTokens.release(userId, voucherId, token);
+            }
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return Result.fail("抢购人数过多，请稍后再试！");
+        }
+        // 4.下单，记录结果
+        Result result;
+        try {
+            result = voucherOrderService.seckillVoucher(voucherId);
+        } catch (RuntimeException e) {
+            if (StrUtil.isNotBlank(token)) {
+                idempotencyTokens.release(userId, voucherId, token);
+            }
+            throw e;
+        }
+        if (StrUtil.isNotBlank(token)) {
+            idempotencyTokens.complete(userId, voucherId, token, result);
+        }
+        return result;
     }
 }
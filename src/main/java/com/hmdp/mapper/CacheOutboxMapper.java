@@ -0,0 +1,13 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.CacheOutbox;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * <p>
+ * 缓存失效发件箱 Mapper 接口
+ * </p>
+ */
+public interface CacheOutboxMapper extends BaseMapper<CacheOutbox> {
+
+}
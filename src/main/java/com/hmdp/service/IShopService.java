@@ -17,4 +17,13 @@ public interface IShopService extends IService<Shop> {
     Result queryById(Long id);
 
     Result update(Shop shop);
+
+    Result saveShop(Shop shop);
+
+    Result queryShopByType(Integer typeId, Integer current);
+
+    /**
+     * 修改店铺评价数，数据库和hash缓存原地自增
+     */
+    void incrementComments(Long id, int delta);
 }
@@ -4,6 +4,9 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +19,29 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    Result createVoucherOrder(Long voucherId);
+    /**
+     * 查询秒杀订单的处理结果，订单异步写入数据库，写入失败时返回失败原因
+     */
+    Result querySeckillOrder(Long orderId);
+
+    /**
+     * 持久化一个订单
+     * @return 0：成功或已经写入；1：数据库库存不足；2：用户已经有其他订单
+     */
+    int createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 批量持久化订单，库存不足时抛出异常回滚整批
+     * @return 因为用户已有订单而没有写入的订单
+     */
+    List<VoucherOrder> createVoucherOrders(List<VoucherOrder> orders);
+
+    Map<String, Object> orderStreamStats();
+
+    /**
+     * 取消未支付的订单并归还数据库库存
+     * @return 数据库中存在的订单（id、user_id、voucher_id、status），本次和之前取消的订单status为4，
+     *         尚未写入数据库的订单不在其中
+     */
+    List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds);
 }
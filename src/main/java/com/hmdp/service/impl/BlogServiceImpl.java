@@ -1,10 +1,16 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.UserHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
 
 /**
  * <p>
@@ -17,4 +23,21 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    @Resource
+    private IShopService shopService;
+
+    @Override
+    @Transactional
+    public Result saveBlog(Blog blog) {
+        // 1.获取登录用户
+        blog.setUserId(UserHolder.getUser().getId());
+        // 2.保存探店博文
+        save(blog);
+        // 3.店铺评价数加一，与博文在同一事务中提交
+        if (blog.getShopId() != null) {
+            shopService.incrementComments(blog.getShopId(), 1);
+        }
+        // 4.返回id
+        return Result.ok(blog.getId());
+    }
 }
@@ -5,8 +5,27 @@ import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.SeckillStockBuckets;
+import com.hmdp.utils.SeckillVoucherStates;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务实现类
@@ -17,4 +36,87 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillStockBuckets seckillStockBuckets;
+    @Resource
+    private SeckillVoucherStates seckillVoucherStates;
+
+    /**
+     * 通过管道把库存和秒杀时间写入redis，供秒杀脚本判断资格
+     * 库存较多的券把库存平均拆分到多个分段key中
+     * @param overwriteStock 是否覆盖已有的库存；redis中的库存先于数据库扣减，预热时不能覆盖；
+     *                       覆盖时库存和秒杀时间都可能变化，清除各节点记录的秒杀券状态
+     */
+    @Override
+    public void loadToRedis(Collection<SeckillVoucher> vouchers, boolean overwriteStock) {
+        // 1.库存分段数，覆盖时按库存计算；预热时沿用redis中已有的分段数
+        List<Integer> layouts = overwriteStock
+                ? vouchers.stream().map(voucher -> seckillStockBuckets.segmentsFor(voucher.getStock())).collect(Collectors.toList())
+                : loadSegments(vouchers);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            int index = 0;
+            for (SeckillVoucher voucher : vouchers) {
+                // 2.库存
+                int segments = layouts.get(index++);
+                if (segments == 0) {
+                    setStock(connection, bytes(SECKILL_STOCK_KEY + voucher.getVoucherId()), voucher.getStock(), overwriteStock);
+                } else {
+                    for (int i = 0; i < segments; i++) {
+                        // 余数分给前面的分段
+                        int stock = voucher.getStock() / segments + (i < voucher.getStock() % segments ? 1 : 0);
+                        setStock(connection, bytes(SeckillStockBuckets.segmentKey(voucher.getVoucherId(), i)), stock, overwriteStock);
+                    }
+                }
+                // 3.秒杀时间，毫秒，以及库存分段数
+                Map<byte[], byte[]> window = new HashMap<>(4);
+                window.put(bytes("begin"), bytes(String.valueOf(toMillis(voucher.getBeginTime()))));
+                window.put(bytes("end"), bytes(String.valueOf(toMillis(voucher.getEndTime()))));
+                window.put(bytes("segments"), bytes(String.valueOf(segments)));
+                connection.hMSet(bytes(SECKILL_VOUCHER_KEY + voucher.getVoucherId()), window);
+            }
+            return null;
+        });
+        if (overwriteStock) {
+            vouchers.forEach(voucher -> seckillVoucherStates.clear(voucher.getVoucherId()));
+        }
+    }
+
+    /**
+     * 分段数只在第一次加载时按库存决定，之后以redis中的为准
+     * 数据库库存随着订单写入减少，重启后按数据库库存重新计算会切换分段模式，新旧库存key同时存在导致超卖
+     */
+    private List<Integer> loadSegments(Collection<SeckillVoucher> vouchers) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (SeckillVoucher voucher : vouchers) {
+                byte[] key = bytes(SECKILL_VOUCHER_KEY + voucher.getVoucherId());
+                connection.hSetNX(key, bytes("segments"), bytes(String.valueOf(seckillStockBuckets.segmentsFor(voucher.getStock()))));
+                connection.hGet(key, bytes("segments"));
+            }
+            return null;
+        });
+        List<Integer> layouts = new ArrayList<>(vouchers.size());
+        for (int i = 1; i < results.size(); i += 2) {
+            layouts.add(Integer.valueOf(String.valueOf(results.get(i))));
+        }
+        return layouts;
+    }
+
+    private static void setStock(RedisConnection connection, byte[] key, int stock, boolean overwrite) {
+        if (overwrite) {
+            connection.set(key, bytes(String.valueOf(stock)));
+        } else {
+            connection.setNX(key, bytes(String.valueOf(stock)));
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -1,18 +1,31 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.SystemConstants;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -24,12 +37,20 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author shadow_maples
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
-    private final StringRedisTemplate stringRedisTemplate;
     private final CacheClient cacheClient;
+    private final CacheInvalidator cacheInvalidator;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 店铺列表页需要的字段
+     */
+    private static final List<String> SHOP_LIST_FIELDS =
+            Arrays.asList("id", "name", "typeId", "images", "area", "avgPrice", "sold", "comments", "score");
 
     @Override
     public Result queryById(Long id) {
@@ -56,10 +77,108 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (id == null) {
             return Result.fail("店铺id不能为空");
         }
-        // 1. 更新数据库
+        // 1. 修改了类型时，记录原来的类型
+        Integer oldTypeId = null;
+        if (shop.getTypeId() != null) {
+            Shop old = getById(id);
+            if (old != null && !shop.getTypeId().equals(old.getTypeId())) {
+                oldTypeId = old.getTypeId();
+            }
+        }
+        // 2. 更新数据库
         updateById(shop);
-        // 2. 删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 3. 删除缓存，事务提交后执行；类型变化时新旧类型的分页id都要删除
+        if (oldTypeId != null) {
+            cacheInvalidator.invalidate(CACHE_SHOP_KEY + id, CACHE_SHOP_HASH_KEY + id,
+                    CACHE_SHOP_TYPE_IDS_KEY + oldTypeId, CACHE_SHOP_TYPE_IDS_KEY + shop.getTypeId());
+        } else {
+            cacheInvalidator.invalidate(CACHE_SHOP_KEY + id, CACHE_SHOP_HASH_KEY + id);
+        }
         return Result.ok();
     }
+
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        // 1. 写入数据库
+        save(shop);
+        // 2. 登记到布隆过滤器
+        cacheClient.markExists(CACHE_SHOP_KEY, shop.getId());
+        // 3. 删除缓存中可能存在的空值和所属类型的分页id，事务提交后执行
+        cacheInvalidator.invalidate(CACHE_SHOP_KEY + shop.getId(), CACHE_SHOP_HASH_KEY + shop.getId(),
+                CACHE_SHOP_TYPE_IDS_KEY + shop.getTypeId());
+        // 返回店铺id
+        return Result.ok(shop.getId());
+    }
+
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current) {
+        // 1. 查询该页的店铺id，缓存未命中时查询数据库
+        List<Long> ids = queryShopIdsByType(typeId, current);
+        // 2. 从hash缓存中只读取列表页需要的字段，未命中的批量查询数据库
+        Map<Long, Shop> shops = cacheClient.queryFieldsBatch(CACHE_SHOP_HASH_KEY, ids, Shop.class, SHOP_LIST_FIELDS,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // 3. 按分页顺序返回
+        List<Shop> records = ids.stream().map(shops::get).filter(Objects::nonNull).collect(Collectors.toList());
+        return Result.ok(records);
+    }
+
+    @Override
+    @Transactional
+    public void incrementComments(Long id, int delta) {
+        // 1. 更新数据库
+        update().setSql("comments = comments + " + delta).eq("id", id).update();
+        // 2. 删除完整对象的缓存，事务提交后执行
+        cacheInvalidator.invalidate(CACHE_SHOP_KEY + id);
+        // 3. hash缓存原地自增，事务提交后执行，回滚时不修改缓存
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    incrementCachedField(id, "comments", delta);
+                }
+            });
+        } else {
+            incrementCachedField(id, "comments", delta);
+        }
+    }
+
+    /**
+     * hash缓存不存在时不做处理，下次读取时从数据库加载；自增失败时删除hash缓存，避免留下旧值
+     */
+    private void incrementCachedField(Long id, String field, int delta) {
+        try {
+            cacheClient.incrementField(CACHE_SHOP_HASH_KEY + id, field, delta);
+        } catch (Exception e) {
+            log.warn("店铺hash缓存自增失败，删除缓存，id：{}", id, e);
+            cacheInvalidator.invalidate(CACHE_SHOP_HASH_KEY + id);
+        }
+    }
+
+    /**
+     * 分页的店铺id缓存在每个类型一个hash中，field为页码，新增店铺或修改类型时删除整个hash
+     * 空页不缓存，避免任意页码写入大量field
+     */
+    private List<Long> queryShopIdsByType(Integer typeId, Integer current) {
+        String key = CACHE_SHOP_TYPE_IDS_KEY + typeId;
+        String field = String.valueOf(current);
+        // 1. 查询缓存
+        Object cached = stringRedisTemplate.opsForHash().get(key, field);
+        if (cached != null) {
+            return Arrays.stream(cached.toString().split(",")).map(Long::valueOf).collect(Collectors.toList());
+        }
+        // 2. 未命中，根据类型分页查询id
+        List<Long> ids = query().select("id")
+                .eq("type_id", typeId)
+                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE))
+                .getRecords().stream().map(Shop::getId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 3. 写入缓存
+        stringRedisTemplate.opsForHash().put(key, field, StrUtil.join(",", ids));
+        stringRedisTemplate.expire(key, CACHE_SHOP_TYPE_IDS_TTL, TimeUnit.MINUTES);
+        return ids;
+    }
 }
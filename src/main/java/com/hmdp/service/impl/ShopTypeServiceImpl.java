@@ -7,6 +7,7 @@ import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheMetrics;
 import com.hmdp.utils.RedisConstants;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -32,17 +33,23 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheMetrics cacheMetrics;
 
     @Override
     public Result queryTypeList() {
+        CacheMetrics.PrefixStats stats = cacheMetrics.of(CACHE_SHOP_TYPE_KEY);
         // 1. 查询Redis
         String shopType = stringRedisTemplate.opsForValue().get(CACHE_SHOP_TYPE_KEY);
         if (StringUtils.hasText(shopType)) {
             // 2. 若存在，直接返回
+            stats.hit(shopType.length());
             List<ShopType> shopTypes = JSONUtil.toList(shopType, ShopType.class);
             return Result.ok(shopTypes);
         }
+        stats.miss();
         // 3. 若不存在，查询数据库
+        long begin = System.nanoTime();
         List<ShopType> shopTypeList = query().orderByAsc("sort").list();
         // 4. 如果数据库不存在，返回错误
         if (CollUtil.isEmpty(shopTypeList)) {
@@ -50,6 +57,7 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
         }
         // 5. 数据库能查询到的话，先存入Redis
         stringRedisTemplate.opsForValue().set(CACHE_SHOP_TYPE_KEY, JSONUtil.toJsonStr(shopTypeList), RedisConstants.CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
+        stats.rebuild(System.nanoTime() - begin);
         // 6. 返回数据
         return Result.ok(shopTypeList);
     }
@@ -1,22 +1,66 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.core.net.NetUtil;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisIdWorker;
-import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.IdWorker;
+import com.hmdp.utils.OrderTimeoutManager;
+import com.hmdp.utils.SeckillStockBuckets;
+import com.hmdp.utils.SeckillVoucherIndex;
+import com.hmdp.utils.SeckillVoucherStates;
+import com.hmdp.utils.TieredLock;
+import com.hmdp.utils.TieredLockFactory;
 import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
-import org.springframework.aop.framework.AopContext;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -26,81 +70,527 @@ import java.time.LocalDateTime;
  * @author shadow_maples
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
     private final ISeckillVoucherService seckillVoucherService;
-    private final RedisIdWorker redisIdWorker;
+    private final IdWorker idWorker;
     private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillStockBuckets seckillStockBuckets;
+    private final SeckillVoucherStates seckillVoucherStates;
+    private final SeckillVoucherIndex seckillVoucherIndex;
+    private final TieredLockFactory tieredLockFactory;
+    private final OrderTimeoutManager orderTimeoutManager;
+
+    /**
+     * 代理对象，消费线程中无法通过AopContext获取
+     */
+    @Lazy
+    @Resource
+    private IVoucherOrderService self;
+
+    @Value("${hmdp.seckill.consumer-threads:4}")
+    private int consumerThreads;
+
+    @Value("${hmdp.seckill.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * pending-list中的消息超过该时间未确认时，由任意节点认领并重新处理，单位毫秒
+     */
+    @Value("${hmdp.seckill.pending-idle-timeout:60000}")
+    private long pendingIdleTimeout;
+
+    private ExecutorService seckillOrderExecutor;
+    private VoucherOrderHandler claimHandler;
+    private volatile boolean running = true;
+
+    private final LongAdder consumedOrders = new LongAdder();
+    private final LongAdder fallbackOrders = new LongAdder();
+    private final Histogram batchSizes = new ConcurrentHistogram(2);
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> SECKILL_LEASED_SCRIPT;
+    static {
+        SECKILL_LEASED_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_LEASED_SCRIPT.setLocation(new ClassPathResource("seckill_leased.lua"));
+        SECKILL_LEASED_SCRIPT.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    private void init() {
+        // 创建消费者组，消息队列不存在时一并创建
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            try {
+                connection.execute("XGROUP", bytes("CREATE"), bytes(SECKILL_ORDER_STREAM_KEY),
+                        bytes(SECKILL_ORDER_GROUP), bytes("0"), bytes("MKSTREAM"));
+            } catch (Exception e) {
+                if (!StrUtil.contains(String.valueOf(e.getMessage()), "BUSYGROUP")) {
+                    throw e;
+                }
+            }
+            return null;
+        });
+        // 消费者名称固定为 主机名-序号，重启后能读取并处理自己未确认的消息
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumerThreads, new NamedThreadFactory("seckill-order-", false));
+        String host = NetUtil.getLocalHostName();
+        for (int i = 0; i < consumerThreads; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler(host + "-" + i));
+        }
+        // 主机名变化或缩容后，旧消费者的消息由认领任务接管
+        claimHandler = new VoucherOrderHandler(host + "-claim");
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        seckillOrderExecutor.shutdown();
+        seckillOrderExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private class VoucherOrderHandler implements Runnable {
+
+        private final String consumer;
+
+        VoucherOrderHandler(String consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void run() {
+            // 先处理上次宕机前未确认的消息
+            handlePendingList();
+            while (running) {
+                try {
+                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 100 BLOCK 2000 STREAMS stream.orders >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumer),
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.lastConsumed())
+                    );
+                    // 2.判断订单信息是否为空
+                    if (list == null || list.isEmpty()) {
+                        // 如果为null，说明没有消息，继续下一次循环
+                        continue;
+                    }
+                    // 3.批量创建订单并确认
+                    handleRecords(list);
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("处理订单异常", e);
+                    handlePendingList();
+                }
+            }
+        }
+
+        /**
+         * 遍历一遍pending-list，处理失败的消息仍然留在其中，由认领任务在空闲超时后重新投递
+         */
+        private void handlePendingList() {
+            String lastId = "0";
+            while (running) {
+                try {
+                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 100 STREAMS stream.orders 0
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumer),
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.from(lastId))
+                    );
+                    // 2.判断订单信息是否为空
+                    if (list == null || list.isEmpty()) {
+                        // 如果为null，说明没有异常消息，结束循环
+                        break;
+                    }
+                    // 3.批量创建订单并确认，从这一批之后继续读取
+                    handleRecords(list);
+                    lastId = list.get(list.size() - 1).getId().getValue();
+                } catch (Exception e) {
+                    log.error("处理pending订单异常", e);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 认领空闲超时的pending消息，不论属于哪个消费者
+     * 主机名变化或缩容的节点留下的消息，以及处理失败等待重试的消息，都由这里重新处理；
+     * XCLAIM会重置空闲时间，多个节点同时认领时只有一个成功
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.pending-claim-interval:30000}")
+    public void claimIdleOrders() {
+        // 1.查询最早的一批pending消息 XPENDING stream.orders g1 - + count
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(
+                SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, Range.unbounded(), (long) batchSize);
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        List<byte[]> args = new ArrayList<>();
+        args.add(bytes(SECKILL_ORDER_STREAM_KEY));
+        args.add(bytes(SECKILL_ORDER_GROUP));
+        args.add(bytes(claimHandler.consumer));
+        args.add(bytes(String.valueOf(pendingIdleTimeout)));
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().toMillis() >= pendingIdleTimeout) {
+                args.add(bytes(message.getIdAsString()));
+            }
+        }
+        if (args.size() == 4) {
+            return;
+        }
+        args.add(bytes("JUSTID"));
+        // 2.认领到本节点的认领消费者 XCLAIM stream.orders g1 consumer min-idle id... JUSTID
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.execute("XCLAIM", args.toArray(new byte[0][])));
+        log.warn("认领空闲超时的订单消息，数量：{}", args.size() - 5);
+        // 3.处理认领到的消息
+        claimHandler.handlePendingList();
+    }
+
+    /**
+     * 批量写入订单，失败时逐条写入
+     * 只确认并删除已经处理完成的消息：写入成功，或者确定不能写入（重复下单、数据库库存不足）；
+     * 数据库异常、获取锁超时的消息留在pending-list中重新投递，队列长度即为积压量
+     */
+    private void handleRecords(List<MapRecord<String, Object, Object>> list) {
+        Map<RecordId, VoucherOrder> orders = new LinkedHashMap<>();
+        list.forEach(record -> orders.put(record.getId(),
+                BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true)));
+        batchSizes.recordValue(orders.size());
+        List<RecordId> done = new ArrayList<>(orders.size());
+        try {
+            List<VoucherOrder> duplicates = self.createVoucherOrders(new ArrayList<>(orders.values()));
+            done.addAll(orders.keySet());
+            // 用户已经有其他订单，订单没有写入，只归还库存
+            for (VoucherOrder duplicate : duplicates) {
+                try {
+                    returnStock(duplicate);
+                } catch (Exception e) {
+                    log.error("归还重复订单的库存失败，orderId：{}", duplicate.getId(), e);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("批量创建订单失败，逐条重试，数量：{}", orders.size(), e);
+            orders.forEach((id, order) -> {
+                fallbackOrders.increment();
+                try {
+                    if (handleVoucherOrder(order)) {
+                        done.add(id);
+                    }
+                } catch (Exception ex) {
+                    log.error("处理订单失败，稍后重试，orderId：{}", order.getId(), ex);
+                }
+            });
+        }
+        if (done.isEmpty()) {
+            return;
+        }
+        consumedOrders.add(done.size());
+        // ACK并删除已处理的消息 XACK stream.orders g1 id...
+        RecordId[] ids = done.toArray(new RecordId[0]);
+        stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, ids);
+        stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM_KEY, ids);
+    }
+
+    @Override
+    public Map<String, Object> orderStreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        // 已处理的消息会被删除，队列长度就是未处理完的订单数
+        stats.put("lag", stringRedisTemplate.opsForStream().size(SECKILL_ORDER_STREAM_KEY));
+        PendingMessagesSummary pending = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP);
+        stats.put("pending", pending == null ? 0 : pending.getTotalPendingMessages());
+        stats.put("consumed", consumedOrders.sum());
+        stats.put("fallback", fallbackOrders.sum());
+        Histogram copy = batchSizes.copy();
+        Map<String, Object> batch = new LinkedHashMap<>();
+        batch.put("count", copy.getTotalCount());
+        batch.put("mean", Math.round(copy.getMean()));
+        batch.put("p50", copy.getValueAtPercentile(50));
+        batch.put("p99", copy.getValueAtPercentile(99));
+        batch.put("max", copy.getMaxValue());
+        stats.put("batchSize", batch);
+        stats.put("timeout", orderTimeoutManager.stats());
+        return stats;
+    }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
-        // 1.查询优惠券
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
-        // 2.判断秒杀是否开始
-        if (voucher.getBeginTime().isAfter(LocalDateTime.now())) {
-            return Result.fail("秒杀活动尚未开始！");
+        // 0.已售罄、未开始或已结束的券直接拒绝，只查询内存
+        int state = seckillVoucherStates.check(voucherId);
+        if (state != SeckillVoucherStates.AVAILABLE) {
+            return Result.fail(SeckillVoucherStates.failMessage(state));
         }
-        // 3.判断秒杀是否结束
-        if (voucher.getEndTime().isBefore(LocalDateTime.now())) {
-            return Result.fail("秒杀活动已结束！");
+        // 0.1.判断秒杀时间，只做内存比较；不在索引中的券交给lua脚本判断
+        long now = System.currentTimeMillis();
+        int window = seckillVoucherIndex.check(voucherId, now);
+        if (window != SeckillVoucherStates.AVAILABLE) {
+            seckillVoucherStates.mark(voucherId, window);
+            return Result.fail(SeckillVoucherStates.failMessage(window));
         }
-        // 4.判断库存是否充足
-        if (voucher.getStock() < 1) {
-            return Result.fail("库存不足！");
+        Long userId = UserHolder.getUser().getId();
+        if (seckillStockBuckets.isSegmented(voucherId)) {
+            return seckillWithLease(voucherId, userId, now);
         }
-        // 5.扣减库存
-        boolean success = seckillVoucherService.update()
-                .setSql("stock = stock - 1")
-                .eq("voucher_id", voucherId).gt("stock", 0)
-                .update();
-        if (!success) {
-            // 扣除失败
-            return Result.fail("库存不足！");
+        // 1.订单id，lua脚本需要把它写入订单消息，只能在脚本之前生成；
+        // 售罄、未开始、已结束和限流的请求在前面的内存判断中已经拒绝，只有首次发现售罄的请求和重复下单会浪费序列号，
+        // 号段模式下只是本地自增，不访问redis
+        long orderId = idWorker.nextId("order");
+        // 2.执行lua脚本，原子判断秒杀时间、库存和一人一单，扣减库存并发送订单消息，不符合条件的请求不会访问数据库
+        long deadline = orderTimeoutManager.deadline(now);
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId,
+                        SECKILL_VOUCHER_KEY + voucherId, SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_DEADLINE_KEY),
+                userId.toString(), String.valueOf(now), voucherId.toString(), String.valueOf(orderId),
+                String.valueOf(deadline));
+        // 3.判断结果是否为0
+        int r = result == null ? 5 : result.intValue();
+        if (r != 0) {
+            // 3.1.不为0，代表没有购买资格，售罄和活动时间的结果记录到状态表
+            seckillVoucherStates.mark(voucherId, r);
+            return Result.fail(SeckillVoucherStates.failMessage(r));
         }
-        Long userId = UserHolder.getUser().getId();
+        // 4.为0，有购买资格，订单由消费线程异步写入数据库，直接返回订单id
+        orderTimeoutManager.schedule(orderId, deadline);
+        return Result.ok(orderId);
+    }
+
+    /**
+     * 分段库存模式：先在本地扣减租借来的库存，库存不足时不访问redis
+     */
+    private Result seckillWithLease(Long voucherId, Long userId, long now) {
+        // 1.本地扣减库存
+        if (!seckillStockBuckets.tryAcquire(voucherId)) {
+            return Result.fail(SeckillVoucherStates.failMessage(1));
+        }
+        // 2.扣减成功后再生成订单id，库存不足的请求不消耗序列号
+        long orderId;
+        try {
+            orderId = idWorker.nextId("order");
+        } catch (RuntimeException e) {
+            seckillStockBuckets.release(voucherId);
+            throw e;
+        }
+        // 3.执行lua脚本，判断秒杀时间和一人一单，并发送订单消息
+        long deadline = orderTimeoutManager.deadline(now);
+        Long result = stringRedisTemplate.execute(SECKILL_LEASED_SCRIPT,
+                Arrays.asList(SECKILL_ORDER_KEY + voucherId, SECKILL_VOUCHER_KEY + voucherId,
+                        SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_DEADLINE_KEY),
+                userId.toString(), String.valueOf(now), voucherId.toString(), String.valueOf(orderId),
+                String.valueOf(deadline));
+        int r = result == null ? 5 : result.intValue();
+        if (r != 0) {
+            // 没有购买资格，库存放回本地
+            seckillStockBuckets.release(voucherId);
+            seckillVoucherStates.mark(voucherId, r);
+            return Result.fail(SeckillVoucherStates.failMessage(r));
+        }
+        orderTimeoutManager.schedule(orderId, deadline);
+        return Result.ok(orderId);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 持久化订单，确定不能写入时归还redis中的库存和下单资格
+     * @return true代表处理完成，可以确认消息；false代表需要重新投递
+     */
+    private boolean handleVoucherOrder(VoucherOrder voucherOrder) {
+        Long userId = voucherOrder.getUserId();
         // 创建锁对象
-        SimpleRedisLock lock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
-        // 获取锁
-        boolean isLock = lock.tryLock(1200);
+        TieredLock lock = tieredLockFactory.getLock("order:" + userId, userId);
+        // 获取锁，同一用户的订单正在写入时最多等待1秒，同节点的重复订单在本地锁上排队，持有期间看门狗自动续期
+        boolean isLock;
+        try {
+            isLock = lock.tryLock(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            isLock = false;
+        }
         // 判断是否获取成功
         if (!isLock) {
-            return Result.fail("不允许重复下单！");
+            // 同一用户的其他订单正在写入，是否重复由数据库判断，消息留在pending-list中稍后重试
+            log.warn("获取下单锁超时，稍后重试，orderId：{}", voucherOrder.getId());
+            return false;
         }
+        int result;
         try {
-            // 获取代理对象（对象）
-            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-            return proxy.createVoucherOrder(voucherId);
+            result = self.createVoucherOrder(voucherOrder);
+        } catch (Exception e) {
+            // 数据库暂时不可用，订单id已经返回给用户，不能回滚，等待重新投递
+            log.error("创建订单失败，稍后重试，orderId：{}", voucherOrder.getId(), e);
+            return false;
         } finally {
             lock.unlock();
         }
+        if (result == 2) {
+            // 用户已经有写入数据库的订单，只归还这次扣减的库存，保留下单资格
+            returnStock(voucherOrder);
+        } else if (result == 1) {
+            soldOut(voucherOrder);
+        }
+        return true;
+    }
+
+    /**
+     * 数据库库存不足：redis的库存多于数据库，不能归还，否则后面的请求会拿到订单id再被丢弃；
+     * 把redis库存校正为0并标记售罄，记录下单失败供用户查询
+     */
+    private void soldOut(VoucherOrder voucherOrder) {
+        Long voucherId = voucherOrder.getVoucherId();
+        String userId = voucherOrder.getUserId().toString();
+        seckillStockBuckets.drain(voucherId);
+        orderTimeoutManager.remove(voucherOrder.getId());
+        stringRedisTemplate.opsForSet().remove(SECKILL_ORDER_KEY + voucherId, userId);
+        stringRedisTemplate.opsForValue().set(SECKILL_ORDER_FAIL_KEY + voucherOrder.getId(), userId,
+                SECKILL_ORDER_FAIL_TTL, TimeUnit.HOURS);
     }
 
     @Override
-    @Transactional
-    public Result createVoucherOrder(Long voucherId) {
-        // 6.一人一单
-        // 6.1查询订单
+    public Result querySeckillOrder(Long orderId) {
         Long userId = UserHolder.getUser().getId();
+        // 1.异步下单失败的订单
+        String failedUser = stringRedisTemplate.opsForValue().get(SECKILL_ORDER_FAIL_KEY + orderId);
+        if (userId.toString().equals(failedUser)) {
+            return Result.fail("库存不足，下单失败！");
+        }
+        // 2.已经写入数据库的订单
+        VoucherOrder order = getById(orderId);
+        if (order != null && userId.equals(order.getUserId())) {
+            return Result.ok(order);
+        }
+        // 3.还在排队写入
+        return Result.fail("订单处理中，请稍后查询！");
+    }
+
+    /**
+     * 归还lua脚本扣减的库存，订单不再需要超时取消
+     */
+    private void returnStock(VoucherOrder voucherOrder) {
+        seckillStockBuckets.returnStock(voucherOrder.getVoucherId(), 1);
+        orderTimeoutManager.remove(voucherOrder.getId());
+    }
 
+    @Override
+    @Transactional
+    public List<VoucherOrder> createVoucherOrders(List<VoucherOrder> orders) {
+        // 1.查询这批用户在这些券上已有的订单，一人一单在redis中已经判断过，这里兜底防止redis数据丢失
+        Set<Long> userIds = orders.stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = orders.stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        List<VoucherOrder> existing = query().select("id", "user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds).list();
+        Set<Long> saved = existing.stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        Set<String> owned = existing.stream()
+                .map(order -> order.getUserId() + ":" + order.getVoucherId())
+                .collect(Collectors.toSet());
+        // 1.1.过滤已经写入的订单（重新投递的消息）和重复的订单（用户已有其他订单，或同一批中出现多次）
+        List<VoucherOrder> toSave = new ArrayList<>(orders.size());
+        List<VoucherOrder> duplicates = new ArrayList<>();
+        for (VoucherOrder order : orders) {
+            if (saved.contains(order.getId())) {
+                continue;
+            }
+            if (owned.add(order.getUserId() + ":" + order.getVoucherId())) {
+                toSave.add(order);
+            } else {
+                log.error("用户已经购买过一次，userId：{}，voucherId：{}", order.getUserId(), order.getVoucherId());
+                duplicates.add(order);
+            }
+        }
+        if (toSave.isEmpty()) {
+            return duplicates;
+        }
+        // 2.按优惠券合并扣减库存，一张券一条update
+        Map<Long, Long> counts = toSave.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        counts.forEach((voucherId, count) -> {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", voucherId).ge("stock", count)
+                    .update();
+            if (!success) {
+                // 回滚整批，由调用方逐条处理
+                throw new IllegalStateException("库存不足，voucherId：" + voucherId);
+            }
+        });
+        // 3.批量插入，配合rewriteBatchedStatements合并为多行insert
+        saveBatch(toSave, toSave.size());
+        return duplicates;
+    }
+
+    @Override
+    @Transactional
+    public List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds) {
+        // 1.锁定订单，避免与支付同时修改
+        List<VoucherOrder> orders = query().select("id", "user_id", "voucher_id", "status")
+                .in("id", orderIds)
+                .last("for update").list();
+        List<VoucherOrder> unpaid = orders.stream()
+                .filter(order -> Objects.equals(order.getStatus(), 1))
+                .collect(Collectors.toList());
+        if (unpaid.isEmpty()) {
+            return orders;
+        }
+        // 2.批量修改为已取消
+        List<Long> ids = unpaid.stream().map(VoucherOrder::getId).collect(Collectors.toList());
+        update().set("status", 4).in("id", ids).eq("status", 1).update();
+        unpaid.forEach(order -> order.setStatus(4));
+        // 3.按优惠券合并归还库存，一张券一条update
+        Map<Long, Long> counts = unpaid.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        counts.forEach((voucherId, count) -> seckillVoucherService.update()
+                .setSql("stock = stock + " + count)
+                .eq("voucher_id", voucherId)
+                .update());
+        return orders;
+    }
+
+    @Override
+    @Transactional
+    public int createVoucherOrder(VoucherOrder voucherOrder) {
+        // 5.订单已经写入，说明是重新投递的消息
+        if (getById(voucherOrder.getId()) != null) {
+            return 0;
+        }
+        // 5.一人一单，redis中已经判断过，这里兜底防止redis数据丢失
+        // 5.1查询订单
+        Long userId = voucherOrder.getUserId();
+        Long voucherId = voucherOrder.getVoucherId();
         int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        // 6.2判断是否存在
+        // 5.2判断是否存在
         if (count > 0) {
             // 用户已经购买过
-            return Result.fail("每名用户仅可购买一次");
+            log.error("用户已经购买过一次，userId：{}，voucherId：{}", userId, voucherId);
+            return 2;
+        }
+        // 6.扣减库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - 1")
+                .eq("voucher_id", voucherId).gt("stock", 0)
+                .update();
+        if (!success) {
+            // 扣除失败
+            log.error("库存不足，voucherId：{}", voucherId);
+            return 1;
         }
         // 7.创建订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        // 7.1订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        // 7.2用户id
-        voucherOrder.setUserId(userId);
-        // 7.3代金券id
-        voucherOrder.setVoucherId(voucherId);
         save(voucherOrder);
-        // 8.返回订单id
-        return Result.ok(orderId);
+        return 0;
     }
 }
@@ -7,12 +7,20 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheInvalidate;
+import com.hmdp.utils.Cached;
+import com.hmdp.utils.SeckillVoucherIndex;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.Collections;
 import java.util.List;
 
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_TTL;
+
 /**
  * <p>
  * 服务实现类
@@ -26,17 +34,34 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private SeckillVoucherIndex seckillVoucherIndex;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        // 查询优惠券信息，通过代理调用才能走缓存
+        IVoucherService proxy = (IVoucherService) AopContext.currentProxy();
+        List<Voucher> vouchers = proxy.listVoucherOfShop(shopId);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    @Cached(keyPrefix = CACHE_VOUCHER_SHOP_KEY, key = "#shopId", ttl = CACHE_VOUCHER_SHOP_TTL)
+    public List<Voucher> listVoucherOfShop(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
+    @Override
+    @Transactional
+    @CacheInvalidate(keyPrefix = CACHE_VOUCHER_SHOP_KEY, key = "#voucher.shopId")
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+    }
+
     @Override
     @Transactional
+    @CacheInvalidate(keyPrefix = CACHE_VOUCHER_SHOP_KEY, key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
@@ -47,5 +72,9 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 保存秒杀库存和秒杀时间到Redis中
+        seckillVoucherService.loadToRedis(Collections.singletonList(seckillVoucher), true);
+        // 更新本节点的秒杀时间索引，其他节点在定时刷新时加载
+        seckillVoucherIndex.put(seckillVoucher);
     }
 }
@@ -0,0 +1,611 @@
+package com.hmdp.utils;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编解码器
+ * 数据格式：版本号(1字节) + 标志位(1字节) + 结构指纹(4字节) + 数据体
+ * 版本2在逻辑过期数据中增加了重建耗时，读取时兼容版本1
+ * 对象的字段按名称排序后依次写入，先写一个非空位图，再写非空字段的值，不写字段名；
+ * 结构指纹由字段名和字段类型计算，实体类结构变化后旧数据按未命中处理；
+ * 数据体超过阈值时使用LZ4压缩
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final String NAME = "binary";
+
+    /**
+     * 格式版本号，必须小于0x20，用来与json数据区分
+     */
+    static final byte VERSION = 0x02;
+    private static final byte VERSION_1 = 0x01;
+    private static final int FLAG_LZ4 = 0x01;
+    private static final int FLAG_LOGICAL = 0x02;
+    private static final int HEADER_LENGTH = 6;
+    /**
+     * 数据体超过该字节数时尝试LZ4压缩
+     */
+    private static final int COMPRESS_THRESHOLD = 512;
+    /**
+     * 空集合或者空值无法得知元素类型，使用该指纹，读取时对任意类型都放行
+     */
+    private static final int ANY_FINGERPRINT = 0;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final Map<Type, ValueCodec> codecs = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ValueCodec> listCodecs = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(byte[] bytes) {
+        return bytes.length >= HEADER_LENGTH && (bytes[0] == VERSION || bytes[0] == VERSION_1);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        ValueCodec codec = runtimeCodec(value);
+        Output body = new Output(256);
+        codec.write(body, value);
+        return pack(0, fingerprintOf(codec, value), body);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, Type type) {
+        ValueCodec codec = codecFor(type);
+        Input in = unpack(bytes, codec);
+        return in == null ? null : (T) codec.read(in);
+    }
+
+    @Override
+    public byte[] encodeLogical(Object value, LocalDateTime expireTime, long rebuildCost) {
+        Output body = new Output(256);
+        body.writeFixedLong(expireTime.toInstant(ZoneOffset.UTC).toEpochMilli());
+        body.writeVarLong(rebuildCost);
+        int fingerprint = ANY_FINGERPRINT;
+        if (value == null) {
+            body.writeByte(0);
+        } else {
+            ValueCodec codec = runtimeCodec(value);
+            fingerprint = fingerprintOf(codec, value);
+            body.writeByte(1);
+            codec.write(body, value);
+        }
+        return pack(FLAG_LOGICAL, fingerprint, body);
+    }
+
+    @Override
+    public RedisData decodeLogical(byte[] bytes, Type type) {
+        ValueCodec codec = codecFor(type);
+        Input in = unpack(bytes, codec);
+        if (in == null) {
+            return null;
+        }
+        RedisData redisData = new RedisData();
+        long expireMillis = in.readFixedLong();
+        redisData.setExpireTime(LocalDateTime.ofEpochSecond(Math.floorDiv(expireMillis, 1000L),
+                (int) Math.floorMod(expireMillis, 1000L) * 1_000_000, ZoneOffset.UTC));
+        if (bytes[0] != VERSION_1) {
+            redisData.setRebuildCost(in.readVarLong());
+        }
+        if (in.readByte() != 0) {
+            redisData.setData(codec.read(in));
+        }
+        return redisData;
+    }
+
+    private byte[] pack(int flags, int fingerprint, Output body) {
+        byte[] raw = body.toByteArray();
+        if (raw.length > COMPRESS_THRESHOLD) {
+            byte[] compressed = new byte[compressor.maxCompressedLength(raw.length)];
+            int length = compressor.compress(raw, 0, raw.length, compressed, 0, compressed.length);
+            if (length + 5 < raw.length) {
+                Output out = new Output(HEADER_LENGTH + 5 + length);
+                writeHeader(out, flags | FLAG_LZ4, fingerprint);
+                out.writeVarInt(raw.length);
+                out.writeBytes(compressed, 0, length);
+                return out.toByteArray();
+            }
+        }
+        Output out = new Output(HEADER_LENGTH + raw.length);
+        writeHeader(out, flags, fingerprint);
+        out.writeBytes(raw, 0, raw.length);
+        return out.toByteArray();
+    }
+
+    private void writeHeader(Output out, int flags, int fingerprint) {
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        out.writeFixedInt(fingerprint);
+    }
+
+    /**
+     * 校验头部并返回数据体，结构指纹不一致时返回null
+     */
+    private Input unpack(byte[] bytes, ValueCodec codec) {
+        Input in = new Input(bytes, 0);
+        in.readByte();
+        int flags = in.readByte();
+        int fingerprint = in.readFixedInt();
+        if (fingerprint != ANY_FINGERPRINT && fingerprint != codec.fingerprint().hashCode()) {
+            return null;
+        }
+        if ((flags & FLAG_LZ4) == 0) {
+            return in;
+        }
+        int rawLength = in.readVarInt();
+        byte[] raw = new byte[rawLength];
+        decompressor.decompress(bytes, in.pos, raw, 0, rawLength);
+        return new Input(raw, 0);
+    }
+
+    private int fingerprintOf(ValueCodec codec, Object value) {
+        if (value instanceof List && ((List<?>) value).stream().allMatch(e -> e == null)) {
+            return ANY_FINGERPRINT;
+        }
+        return codec.fingerprint().hashCode();
+    }
+
+    /**
+     * 根据运行时的值获取编解码器，List按第一个非空元素的类型确定元素类型
+     */
+    private ValueCodec runtimeCodec(Object value) {
+        if (value instanceof List) {
+            Class<?> elementType = ((List<?>) value).stream()
+                    .filter(e -> e != null).findFirst().<Class<?>>map(Object::getClass).orElse(String.class);
+            return listCodecs.computeIfAbsent(elementType, t -> new ListCodec(codecFor(t)));
+        }
+        return codecFor(value.getClass());
+    }
+
+    private ValueCodec codecFor(Type type) {
+        ValueCodec codec = codecs.get(type);
+        if (codec == null) {
+            codec = createCodec(type);
+            codecs.put(type, codec);
+        }
+        return codec;
+    }
+
+    private ValueCodec createCodec(Type type) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            if (parameterizedType.getRawType() == List.class) {
+                Type elementType = parameterizedType.getActualTypeArguments()[0];
+                return elementType instanceof Class
+                        ? listCodecs.computeIfAbsent((Class<?>) elementType, t -> new ListCodec(codecFor(t)))
+                        : new ListCodec(codecFor(elementType));
+            }
+            throw new IllegalArgumentException("不支持的缓存类型：" + type);
+        }
+        Class<?> clazz = (Class<?>) type;
+        if (clazz == Long.class || clazz == long.class) {
+            return SimpleCodec.LONG;
+        }
+        if (clazz == Integer.class || clazz == int.class) {
+            return SimpleCodec.INTEGER;
+        }
+        if (clazz == Short.class || clazz == short.class) {
+            return SimpleCodec.SHORT;
+        }
+        if (clazz == Byte.class || clazz == byte.class) {
+            return SimpleCodec.BYTE;
+        }
+        if (clazz == Boolean.class || clazz == boolean.class) {
+            return SimpleCodec.BOOLEAN;
+        }
+        if (clazz == Double.class || clazz == double.class) {
+            return SimpleCodec.DOUBLE;
+        }
+        if (clazz == Float.class || clazz == float.class) {
+            return SimpleCodec.FLOAT;
+        }
+        if (clazz == String.class) {
+            return SimpleCodec.STRING;
+        }
+        if (clazz == BigDecimal.class) {
+            return SimpleCodec.DECIMAL;
+        }
+        if (clazz == LocalDateTime.class) {
+            return SimpleCodec.DATE_TIME;
+        }
+        if (clazz == LocalDate.class) {
+            return SimpleCodec.DATE;
+        }
+        if (clazz == LocalTime.class) {
+            return SimpleCodec.TIME;
+        }
+        if (clazz.isEnum()) {
+            return new EnumCodec(clazz);
+        }
+        if (clazz.isArray() || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())
+                || clazz.getName().startsWith("java.")) {
+            throw new IllegalArgumentException("不支持的缓存类型：" + type);
+        }
+        return new BeanCodec(clazz);
+    }
+
+    private interface ValueCodec {
+        void write(Output out, Object value);
+
+        Object read(Input in);
+
+        /**
+         * 结构描述，用于计算结构指纹
+         */
+        String fingerprint();
+    }
+
+    private enum SimpleCodec implements ValueCodec {
+        LONG {
+            public void write(Output out, Object value) { out.writeVarLong(zigzag((Long) value)); }
+            public Object read(Input in) { return unzigzag(in.readVarLong()); }
+        },
+        INTEGER {
+            public void write(Output out, Object value) { out.writeVarLong(zigzag((Integer) value)); }
+            public Object read(Input in) { return (int) unzigzag(in.readVarLong()); }
+        },
+        SHORT {
+            public void write(Output out, Object value) { out.writeVarLong(zigzag((Short) value)); }
+            public Object read(Input in) { return (short) unzigzag(in.readVarLong()); }
+        },
+        BYTE {
+            public void write(Output out, Object value) { out.writeByte((Byte) value); }
+            public Object read(Input in) { return in.readByte(); }
+        },
+        BOOLEAN {
+            public void write(Output out, Object value) { out.writeByte((Boolean) value ? 1 : 0); }
+            public Object read(Input in) { return in.readByte() != 0; }
+        },
+        DOUBLE {
+            public void write(Output out, Object value) { out.writeFixedLong(Double.doubleToRawLongBits((Double) value)); }
+            public Object read(Input in) { return Double.longBitsToDouble(in.readFixedLong()); }
+        },
+        FLOAT {
+            public void write(Output out, Object value) { out.writeFixedInt(Float.floatToRawIntBits((Float) value)); }
+            public Object read(Input in) { return Float.intBitsToFloat(in.readFixedInt()); }
+        },
+        STRING {
+            public void write(Output out, Object value) { out.writeString((String) value); }
+            public Object read(Input in) { return in.readString(); }
+        },
+        DECIMAL {
+            public void write(Output out, Object value) { out.writeString(((BigDecimal) value).toString()); }
+            public Object read(Input in) { return new BigDecimal(in.readString()); }
+        },
+        DATE_TIME {
+            public void write(Output out, Object value) {
+                LocalDateTime time = (LocalDateTime) value;
+                out.writeVarLong(zigzag(time.toEpochSecond(ZoneOffset.UTC)));
+                out.writeVarLong(time.getNano());
+            }
+            public Object read(Input in) {
+                long seconds = unzigzag(in.readVarLong());
+                return LocalDateTime.ofEpochSecond(seconds, (int) in.readVarLong(), ZoneOffset.UTC);
+            }
+        },
+        DATE {
+            public void write(Output out, Object value) { out.writeVarLong(zigzag(((LocalDate) value).toEpochDay())); }
+            public Object read(Input in) { return LocalDate.ofEpochDay(unzigzag(in.readVarLong())); }
+        },
+        TIME {
+            public void write(Output out, Object value) { out.writeVarLong(((LocalTime) value).toNanoOfDay()); }
+            public Object read(Input in) { return LocalTime.ofNanoOfDay(in.readVarLong()); }
+        };
+
+        @Override
+        public String fingerprint() {
+            return name();
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    private static class EnumCodec implements ValueCodec {
+        private final Class<?> type;
+
+        EnumCodec(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            out.writeString(((Enum<?>) value).name());
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Object read(Input in) {
+            return Enum.valueOf((Class<? extends Enum>) type, in.readString());
+        }
+
+        @Override
+        public String fingerprint() {
+            return type.getName();
+        }
+    }
+
+    private static class ListCodec implements ValueCodec {
+        private final ValueCodec elementCodec;
+
+        ListCodec(ValueCodec elementCodec) {
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            List<?> list = (List<?>) value;
+            out.writeVarInt(list.size());
+            for (Object element : list) {
+                if (element == null) {
+                    out.writeByte(0);
+                } else {
+                    out.writeByte(1);
+                    elementCodec.write(out, element);
+                }
+            }
+        }
+
+        @Override
+        public Object read(Input in) {
+            int size = in.readVarInt();
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(in.readByte() == 0 ? null : elementCodec.read(in));
+            }
+            return list;
+        }
+
+        @Override
+        public String fingerprint() {
+            return "List<" + elementCodec.fingerprint() + ">";
+        }
+    }
+
+    /**
+     * 实体类的编解码器，字段按名称排序，不依赖反射返回的声明顺序
+     */
+    private class BeanCodec implements ValueCodec {
+        private final Constructor<?> constructor;
+        private final Field[] fields;
+        private final String fingerprint;
+        /**
+         * 字段的编解码器延迟创建，避免实体类之间相互引用时无限递归
+         */
+        private volatile ValueCodec[] fieldCodecs;
+
+        BeanCodec(Class<?> type) {
+            try {
+                this.constructor = type.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("缓存类型缺少无参构造：" + type, e);
+            }
+            List<Field> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    list.add(field);
+                }
+            }
+            list.sort(Comparator.comparing(Field::getName));
+            this.fields = list.toArray(new Field[0]);
+            StringBuilder sb = new StringBuilder(type.getName()).append('{');
+            for (Field field : fields) {
+                sb.append(field.getName()).append(':').append(field.getGenericType().getTypeName()).append(',');
+            }
+            this.fingerprint = sb.append('}').toString();
+        }
+
+        private ValueCodec[] fieldCodecs() {
+            ValueCodec[] result = fieldCodecs;
+            if (result == null) {
+                result = Arrays.stream(fields).map(f -> codecFor(f.getGenericType())).toArray(ValueCodec[]::new);
+                fieldCodecs = result;
+            }
+            return result;
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            ValueCodec[] codecs = fieldCodecs();
+            Object[] values = new Object[fields.length];
+            byte[] bitmap = new byte[(fields.length + 7) >>> 3];
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = fields[i].get(value);
+                    if (values[i] != null) {
+                        bitmap[i >>> 3] |= 1 << (i & 7);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            out.writeBytes(bitmap, 0, bitmap.length);
+            for (int i = 0; i < fields.length; i++) {
+                if (values[i] != null) {
+                    codecs[i].write(out, values[i]);
+                }
+            }
+        }
+
+        @Override
+        public Object read(Input in) {
+            ValueCodec[] codecs = fieldCodecs();
+            int bitmapLength = (fields.length + 7) >>> 3;
+            int bitmapOffset = in.pos;
+            in.pos += bitmapLength;
+            try {
+                Object bean = constructor.newInstance();
+                for (int i = 0; i < fields.length; i++) {
+                    if ((in.bytes[bitmapOffset + (i >>> 3)] & (1 << (i & 7))) != 0) {
+                        fields[i].set(bean, codecs[i].read(in));
+                    } else if (!fields[i].getType().isPrimitive()) {
+                        fields[i].set(bean, null);
+                    }
+                }
+                return bean;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String fingerprint() {
+            return fingerprint;
+        }
+    }
+
+    private static class Output {
+        private byte[] bytes;
+        private int pos;
+
+        Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void ensure(int length) {
+            if (pos + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, pos + length));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[pos++] = (byte) value;
+        }
+
+        void writeBytes(byte[] src, int offset, int length) {
+            ensure(length);
+            System.arraycopy(src, offset, bytes, pos, length);
+            pos += length;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[pos++] = (byte) value;
+        }
+
+        void writeFixedInt(int value) {
+            ensure(4);
+            for (int i = 3; i >= 0; i--) {
+                bytes[pos++] = (byte) (value >>> (i << 3));
+            }
+        }
+
+        void writeFixedLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                bytes[pos++] = (byte) (value >>> (i << 3));
+            }
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            writeBytes(utf8, 0, utf8.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, pos);
+        }
+    }
+
+    private static class Input {
+        private final byte[] bytes;
+        private int pos;
+
+        Input(byte[] bytes, int pos) {
+            this.bytes = bytes;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return bytes[pos++];
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+        int readFixedInt() {
+            int result = 0;
+            for (int i = 0; i < 4; i++) {
+                result = (result << 8) | (bytes[pos++] & 0xFF);
+            }
+            return result;
+        }
+
+        long readFixedLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (bytes[pos++] & 0xFF);
+            }
+            return result;
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String value = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于位数组的布隆过滤器，写入和查询均无锁，可并发使用
+ * 采用双重哈希 h1 + i * h2 模拟k个哈希函数
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int numHashes;
+    private final long expectedInsertions;
+    /**
+     * 写入后改变了位数组的次数，近似等于已写入的不同元素个数
+     */
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望的误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        // m = -n * ln(p) / (ln2)^2
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bitSize = Math.max(64, (m + 63) / 64 * 64);
+        // k = m / n * ln2
+        this.numHashes = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (bitSize / 64));
+        this.expectedInsertions = n;
+    }
+
+    /**
+     * @return 是否有位被改变，false代表元素（可能）已经存在
+     */
+    public boolean put(Object value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean changed = false;
+        for (int i = 1; i <= numHashes; i++) {
+            long index = index(h1 + i * h2);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old;
+            do {
+                old = bits.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, old, old | mask));
+            changed |= (old & mask) == 0;
+        }
+        if (changed) {
+            insertions.increment();
+        }
+        return changed;
+    }
+
+    public boolean mightContain(Object value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = index(h1 + i * h2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int numHashes() {
+        return numHashes;
+    }
+
+    public long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public long insertions() {
+        return insertions.sum();
+    }
+
+    /**
+     * 写入的元素超过预计个数后误判率会快速上升，需要扩容重建
+     */
+    public boolean isSaturated() {
+        return insertions.sum() > expectedInsertions;
+    }
+
+    /**
+     * 位数组占用的内存，单位字节
+     */
+    public long memoryBytes() {
+        return bitSize / 8;
+    }
+
+    private long index(int combined) {
+        // 取非负数后对位数取模
+        return (combined & Integer.MAX_VALUE) % bitSize;
+    }
+
+    /**
+     * FNV-1a 64位哈希，再经过murmur3的fmix64打散
+     */
+    private static long hash(Object value) {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
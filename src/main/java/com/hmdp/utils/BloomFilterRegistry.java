@@ -0,0 +1,212 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_BLOOM_ADD_CHANNEL;
+
+/**
+ * 按keyPrefix管理的布隆过滤器，用于在访问Redis和数据库之前拦截不存在的id
+ * 过滤器保存在进程内，新增数据时通过Redis发布订阅同步到所有节点。
+ * 发布订阅不保证送达，因此定期从数据库重建以补上丢失的新增；
+ * 写入元素超过预计个数时按两倍容量提前重建，避免误判率持续上升
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BloomFilterRegistry implements MessageListener {
+
+    /**
+     * 用于测量误判率的探测次数
+     */
+    private static final int FPP_PROBES = 10000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 已构建完成、参与拦截的过滤器
+     */
+    private final Map<String, BloomFilter> filters = new ConcurrentHashMap<>();
+    /**
+     * 构建中的过滤器，构建期间的新增也要写入，避免构建完成后漏判
+     */
+    private final Map<String, BloomFilter> building = new ConcurrentHashMap<>();
+    /**
+     * 各前缀的构建参数，用于重建
+     */
+    private final Map<String, BuildSpec> specs = new ConcurrentHashMap<>();
+
+    private final ExecutorService rebuildExecutor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("bloom-rebuild-", true));
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CACHE_BLOOM_ADD_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 判断id是否可能存在，该前缀未开启过滤器时一律返回true
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        BloomFilter filter = filters.get(keyPrefix);
+        return filter == null || filter.mightContain(id);
+    }
+
+    /**
+     * 新增数据后调用，同步到所有节点
+     */
+    public void add(String keyPrefix, Object id) {
+        addLocal(keyPrefix, String.valueOf(id));
+        stringRedisTemplate.convertAndSend(CACHE_BLOOM_ADD_CHANNEL, keyPrefix + id);
+    }
+
+    /**
+     * 构建过滤器，构建完成前该前缀不做拦截
+     * @param keyPrefix 缓存key前缀
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望误判率
+     * @param pageLoader 根据上一页最后一个id分页加载id，返回空集合表示加载完毕
+     */
+    public void build(String keyPrefix, long expectedInsertions, double fpp, Function<Long, Collection<Long>> pageLoader) {
+        specs.put(keyPrefix, new BuildSpec(expectedInsertions, fpp, pageLoader));
+        doBuild(keyPrefix, expectedInsertions, fpp, pageLoader);
+    }
+
+    /**
+     * 定期从数据库重建所有过滤器，补上发布订阅丢失的新增，容量取原容量和当前元素数两倍中的较大者
+     */
+    @Scheduled(initialDelayString = "${hmdp.cache.bloom-rebuild-interval:3600000}",
+            fixedDelayString = "${hmdp.cache.bloom-rebuild-interval:3600000}")
+    public void rebuildAll() {
+        for (String keyPrefix : specs.keySet()) {
+            try {
+                rebuild(keyPrefix);
+            } catch (Exception e) {
+                log.error("重建布隆过滤器失败，前缀：{}", keyPrefix, e);
+            }
+        }
+    }
+
+    private void rebuild(String keyPrefix) {
+        BuildSpec spec = specs.get(keyPrefix);
+        BloomFilter current = filters.get(keyPrefix);
+        if (spec == null || current == null) {
+            // 未构建完成
+            return;
+        }
+        long expectedInsertions = Math.max(spec.getExpectedInsertions(), current.insertions() * 2);
+        spec.setExpectedInsertions(expectedInsertions);
+        doBuild(keyPrefix, expectedInsertions, spec.getFpp(), spec.getPageLoader());
+    }
+
+    private void doBuild(String keyPrefix, long expectedInsertions, double fpp, Function<Long, Collection<Long>> pageLoader) {
+        long begin = System.currentTimeMillis();
+        BloomFilter filter = new BloomFilter(expectedInsertions, fpp);
+        if (building.putIfAbsent(keyPrefix, filter) != null) {
+            // 其他线程正在构建
+            return;
+        }
+        long count = 0;
+        long maxId = 0;
+        try {
+            Collection<Long> ids = pageLoader.apply(0L);
+            while (!ids.isEmpty()) {
+                for (Long id : ids) {
+                    filter.put(String.valueOf(id));
+                    maxId = Math.max(maxId, id);
+                }
+                count += ids.size();
+                ids = pageLoader.apply(maxId);
+            }
+            // 构建期间旧过滤器继续拦截，构建完成后再替换
+            filters.put(keyPrefix, filter);
+        } finally {
+            building.remove(keyPrefix);
+        }
+        // 用一定不存在的id（大于最大id）测量实际误判率
+        int falsePositives = 0;
+        for (long i = 1; i <= FPP_PROBES; i++) {
+            if (filter.mightContain(String.valueOf(maxId + i))) {
+                falsePositives++;
+            }
+        }
+        log.info("布隆过滤器构建完成，前缀：{}，元素数：{}，位数：{}，哈希函数数：{}，内存：{}KB，实测误判率：{}，耗时：{}ms",
+                keyPrefix, count, filter.bitSize(), filter.numHashes(), filter.memoryBytes() / 1024,
+                (double) falsePositives / FPP_PROBES, System.currentTimeMillis() - begin);
+    }
+
+    private void addLocal(String keyPrefix, String id) {
+        BloomFilter filter = filters.get(keyPrefix);
+        if (filter != null && filter.put(id) && filter.isSaturated() && !building.containsKey(keyPrefix)) {
+            // 超出预计容量，异步扩容重建
+            rebuildExecutor.execute(() -> {
+                try {
+                    BloomFilter latest = filters.get(keyPrefix);
+                    if (latest != null && latest.isSaturated()) {
+                        rebuild(keyPrefix);
+                    }
+                } catch (Exception e) {
+                    log.error("扩容重建布隆过滤器失败，前缀：{}", keyPrefix, e);
+                }
+            });
+        }
+        BloomFilter buildingFilter = building.get(keyPrefix);
+        if (buildingFilter != null) {
+            buildingFilter.put(id);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        // 按最长前缀匹配，避免 cache:shop: 误匹配 cache:shop:type:xxx
+        String matched = null;
+        for (String keyPrefix : filters.keySet()) {
+            if (key.startsWith(keyPrefix) && (matched == null || keyPrefix.length() > matched.length())) {
+                matched = keyPrefix;
+            }
+        }
+        for (String keyPrefix : building.keySet()) {
+            if (key.startsWith(keyPrefix) && (matched == null || keyPrefix.length() > matched.length())) {
+                matched = keyPrefix;
+            }
+        }
+        if (matched != null) {
+            addLocal(matched, key.substring(matched.length()));
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class BuildSpec {
+        private long expectedInsertions;
+        private double fpp;
+        private Function<Long, Collection<Long>> pageLoader;
+    }
+}
@@ -0,0 +1,120 @@
+package com.hmdp.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.LOCK_CACHE_KEY;
+
+/**
+ * 处理@Cached和@CacheInvalidate注解
+ * 查询时按注解指定的方案交给CacheClient，未命中时执行原方法作为数据库查询
+ * 优先级低于事务切面（见HmDianPingApplication），在事务内执行，发件箱记录与业务数据在同一事务中提交
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class CacheAspect {
+
+    private final CacheClient cacheClient;
+    private final CacheInvalidator cacheInvalidator;
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Around("@annotation(cached)")
+    public Object cache(ProceedingJoinPoint joinPoint, Cached cached) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        //1. 计算key和带随机量的TTL
+        Object id = resolveKey(cached.key(), method, joinPoint.getArgs());
+        Type type = method.getGenericReturnType();
+        long ttl = jitter(cached.unit().toSeconds(cached.ttl()), cached.jitter());
+        String keyPrefix = cached.keyPrefix();
+        Function<Object, Object> dbFallback = ignored -> proceed(joinPoint);
+        //2. 按方案查询，原方法抛出的异常原样抛出
+        try {
+            switch (cached.strategy()) {
+                case MUTEX:
+                    return cacheClient.queryWithMutex(keyPrefix, LOCK_CACHE_KEY + keyPrefix, id, type,
+                            dbFallback, ttl, TimeUnit.SECONDS);
+                case LOGICAL_EXPIRE:
+                    Object r = cacheClient.queryWithLogicalExpire(keyPrefix, LOCK_CACHE_KEY + keyPrefix, id, type,
+                            dbFallback, ttl, TimeUnit.SECONDS);
+                    if (r == null) {
+                        //未预热的key，加锁查询后写入，之后由逻辑过期方案维护
+                        r = cacheClient.loadWithLogicalExpire(keyPrefix, LOCK_CACHE_KEY + keyPrefix, id, type,
+                                dbFallback, ttl, TimeUnit.SECONDS);
+                    }
+                    return r;
+                default:
+                    return cacheClient.queryWithPassThrough(keyPrefix, id, type, dbFallback, ttl, TimeUnit.SECONDS);
+            }
+        } catch (ProceedException e) {
+            throw e.getCause();
+        }
+    }
+
+    @AfterReturning("@annotation(cacheInvalidate)")
+    public void invalidate(JoinPoint joinPoint, CacheInvalidate cacheInvalidate) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Object id = resolveKey(cacheInvalidate.key(), method, joinPoint.getArgs());
+        cacheInvalidator.invalidate(cacheInvalidate.keyPrefix() + id);
+    }
+
+    private Object resolveKey(String spel, Method method, Object[] args) {
+        if (spel.isEmpty()) {
+            return args[0];
+        }
+        Expression expression = expressions.computeIfAbsent(spel, parser::parseExpression);
+        return expression.getValue(new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer));
+    }
+
+    private static long jitter(long ttlSeconds, double ratio) {
+        if (ratio <= 0) {
+            return ttlSeconds;
+        }
+        return ttlSeconds + (long) (ttlSeconds * ratio * ThreadLocalRandom.current().nextDouble());
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ProceedException(e);
+        }
+    }
+
+    /**
+     * 在Function中传递原方法抛出的受检异常
+     */
+    private static class ProceedException extends RuntimeException {
+        ProceedException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
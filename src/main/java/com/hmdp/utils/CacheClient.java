@@ -1,20 +1,41 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -22,154 +43,664 @@ import java.util.function.Function;
 public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
+    private final LocalCache localCache;
+    private final BloomFilterRegistry bloomFilterRegistry;
+    private final CacheCodecs cacheCodecs;
+    private final CacheRebuildSignal cacheRebuildSignal;
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+    private final CacheMetrics cacheMetrics;
 
     /**
-     * 设置TTL过期时间，将对象序列化为json并存储在string类型的key中
+     * 空值标记，用于解决缓存穿透
+     */
+    private static final byte[] NULL_MARKER = new byte[0];
+    /**
+     * 缓存未命中的标记，与命中空值（null）区分
+     */
+    private static final Object MISS = new Object();
+    /**
+     * hash缓存的存在标记字段，1代表数据存在，0代表数据不存在（空值）
+     */
+    private static final String HASH_EXISTS_FIELD = "_exists";
+    private static final DefaultRedisScript<Long> HASH_INCR_SCRIPT;
+    static {
+        HASH_INCR_SCRIPT = new DefaultRedisScript<>();
+        HASH_INCR_SCRIPT.setLocation(new ClassPathResource("hash_incr.lua"));
+        HASH_INCR_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 本节点正在重建的key，同一个key的并发请求共享一次重建
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> rebuildsInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 设置TTL过期时间，将对象序列化后存储在string类型的key中
      */
     public void set(String key, Object object, Long ttl, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(object), ttl, unit);
+        setRaw(key, cacheCodecs.encode(object), ttl, unit);
     }
 
     /**
-     * 设置逻辑过期时间，将对象序列化为json并存储在string类型的key中，用于解决缓存击穿问题
+     * 设置逻辑过期时间，将对象序列化后存储在string类型的key中，用于解决缓存击穿问题
      */
     public void setWithLogicalExpire(String key, Object object, Long ttl, TimeUnit unit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(object);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(ttl)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setWithLogicalExpire(key, object, ttl, unit, 0L);
+    }
+
+    /**
+     * 设置逻辑过期时间，同时记录本次重建的耗时（毫秒），用于提前刷新
+     */
+    public void setWithLogicalExpire(String key, Object object, Long ttl, TimeUnit unit, long rebuildCost) {
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(ttl));
+        setRaw(key, cacheCodecs.encodeLogical(object, expireTime, rebuildCost), null, null);
+    }
+
+    /**
+     * 通过管道批量写入，用于缓存预热
+     * TTL在原值基础上随机增加0~10%，避免同一批写入的key同时过期
+     */
+    public void setBatch(Map<String, ?> values, Long ttl, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long ttlMillis = unit.toMillis(ttl);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> {
+                long jitter = ThreadLocalRandom.current().nextLong(ttlMillis / 10 + 1);
+                connection.set(rawKey(key), cacheCodecs.encode(value),
+                        Expiration.milliseconds(ttlMillis + jitter), RedisStringCommands.SetOption.upsert());
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 删除缓存，同时广播通知所有节点删除本地缓存
+     */
+    public void evict(String key) {
+        stringRedisTemplate.delete(key);
+        localCache.publishInvalidate(key);
+    }
+
+    /**
+     * 新增数据后登记id，使布隆过滤器放行该id
+     */
+    public void markExists(String keyPrefix, Object id) {
+        bloomFilterRegistry.add(keyPrefix, id);
     }
 
     /**
      * 解决缓存穿透问题
      */
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit) {
+        return queryWithPassThrough(keyPrefix, id, (Type) type, dbFallback, ttl, unit);
+    }
+
+    /**
+     * 解决缓存穿透问题，type可以是泛型类型，例如List&lt;Voucher&gt;
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheMetrics.PrefixStats stats = cacheMetrics.of(keyPrefix);
+        //0. 先查本地缓存
+        Object local = localCache.get(keyPrefix, key);
+        if (local != null) {
+            stats.localHit();
+            return (R) local;
+        }
+        //0.1 布隆过滤器判定不存在，直接返回，不再访问redis和数据库
+        if (!bloomFilterRegistry.mightContain(keyPrefix, id)) {
+            stats.bloomReject();
+            return null;
+        }
         //1. 从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
         //2. 判断是否存在
-        if (StringUtils.hasText(json)) {
-            //3. 存在，直接返回
-            return JSONUtil.toBean(json, type);
-        }
-        //判断命中的是否是空值
-        if (json != null) {
-            //返回错误信息
+        if (bytes != null && bytes.length > 0) {
+            //3. 存在，写入本地缓存并返回；结构不一致时解析为null，按未命中处理
+            R cached = cacheCodecs.decode(bytes, type);
+            if (cached != null) {
+                stats.hit(bytes.length);
+                localCache.put(keyPrefix, key, cached);
+                return cached;
+            }
+        } else if (bytes != null) {
+            //判断命中的是否是空值，返回错误信息
+            stats.nullHit();
             return null;
         }
+        stats.miss();
         //4. 不存在，根据id查询数据库
+        long begin = System.nanoTime();
         R r = dbFallback.apply(id);
         if (Objects.isNull(r)) {
             //5. 数据库中不存在，返回错误
             //将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setRaw(key, NULL_MARKER, RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+            stats.rebuild(System.nanoTime() - begin);
             return null;
         }
-        //6. 数据库中存在，写入redis
+        //6. 数据库中存在，写入redis和本地缓存
         this.set(key, r, ttl, unit);
+        localCache.put(keyPrefix, key, r);
+        stats.rebuild(System.nanoTime() - begin);
         //7. 返回数据
         return r;
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 批量查询，解决列表数据逐条查询的N+1问题
+     * 一次MGET查询redis，未命中的id一次性查询数据库，再通过管道批量写回redis（数据库中不存在的id写入空值）
+     * @param dbFallback 根据未命中的id集合批量查询数据库，返回 id -> 数据
+     * @return id -> 数据，不存在的id不包含在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatch(String keyPrefix, Collection<ID> ids, Class<R> type, Function<Collection<ID>, Map<ID, R>> dbFallback, Long ttl, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        CacheMetrics.PrefixStats stats = cacheMetrics.of(keyPrefix);
+        //1. 先查本地缓存，并用布隆过滤器排除不存在的id
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if (id == null) {
+                continue;
+            }
+            Object local = localCache.get(keyPrefix, keyPrefix + id);
+            if (local != null) {
+                stats.localHit();
+                result.put(id, type.cast(local));
+            } else if (bloomFilterRegistry.mightContain(keyPrefix, id)) {
+                remoteIds.add(id);
+            } else {
+                stats.bloomReject();
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        //2. 一次MGET查询redis
+        byte[][] keys = remoteIds.stream().map(id -> rawKey(keyPrefix + id)).toArray(byte[][]::new);
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes == null) {
+                stats.miss();
+                missIds.add(id);
+                continue;
+            }
+            if (bytes.length == 0) {
+                //命中空值，数据不存在
+                stats.nullHit();
+                continue;
+            }
+            R cached = cacheCodecs.decode(bytes, type);
+            if (cached == null) {
+                //结构不一致，按未命中处理
+                stats.miss();
+                missIds.add(id);
+                continue;
+            }
+            stats.hit(bytes.length);
+            localCache.put(keyPrefix, keyPrefix + id, cached);
+            result.put(id, cached);
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        //3. 未命中的id一次性查询数据库
+        long begin = System.nanoTime();
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+        //4. 通过管道批量写回redis，数据库中不存在的写入空值
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                R r = loaded == null ? null : loaded.get(id);
+                if (r == null) {
+                    connection.set(rawKey(keyPrefix + id), NULL_MARKER,
+                            Expiration.from(RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES), RedisStringCommands.SetOption.upsert());
+                } else {
+                    connection.set(rawKey(keyPrefix + id), cacheCodecs.encode(r),
+                            Expiration.from(ttl, unit), RedisStringCommands.SetOption.upsert());
+                    localCache.put(keyPrefix, keyPrefix + id, r);
+                    result.put(id, r);
+                }
+            }
+            return null;
+        });
+        stats.rebuild(System.nanoTime() - begin);
+        return result;
+    }
+
+    /**
+     * 批量读取hash缓存中的部分字段，列表页只需要少量字段时减少传输和反序列化的数据量
+     * 未命中的id一次性查询数据库，并以hash结构写回；无论是否命中，返回的对象都只有fields中的属性有值
+     */
+    public <R, ID> Map<ID, R> queryFieldsBatch(String keyPrefix, Collection<ID> ids, Class<R> type, List<String> fields,
+                                               Function<Collection<ID>, Map<ID, R>> dbFallback, Long ttl, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        CacheMetrics.PrefixStats stats = cacheMetrics.of(keyPrefix);
+        List<ID> idList = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (idList.isEmpty()) {
+            return result;
+        }
+        //1. 通过管道批量HMGET，第一个字段是存在标记
+        byte[][] fieldBytes = new byte[fields.size() + 1][];
+        fieldBytes[0] = rawKey(HASH_EXISTS_FIELD);
+        for (int i = 0; i < fields.size(); i++) {
+            fieldBytes[i + 1] = rawKey(fields.get(i));
+        }
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : idList) {
+                connection.hMGet(rawKey(keyPrefix + id), fieldBytes);
+            }
+            return null;
+        });
+        //2. 解析命中的数据
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i++) {
+            ID id = idList.get(i);
+            @SuppressWarnings("unchecked")
+            List<String> hash = (List<String>) values.get(i);
+            String exists = hash == null ? null : hash.get(0);
+            if (exists == null) {
+                stats.miss();
+                missIds.add(id);
+                continue;
+            }
+            if (!"1".equals(exists)) {
+                //命中空值，数据不存在
+                stats.nullHit();
+                continue;
+            }
+            Map<String, Object> map = new HashMap<>();
+            int size = 0;
+            for (int j = 0; j < fields.size(); j++) {
+                String value = hash.get(j + 1);
+                if (value != null) {
+                    map.put(fields.get(j), value);
+                    size += value.length();
+                }
+            }
+            stats.hit(size);
+            result.put(id, BeanUtil.toBean(map, type, CopyOptions.create().ignoreError()));
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        //3. 未命中的id一次性查询数据库，通过管道写回
+        long begin = System.nanoTime();
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                R r = loaded == null ? null : loaded.get(id);
+                writeHash(connection, keyPrefix + id, r, ttl, unit);
+                if (r != null) {
+                    //与命中时的结构保持一致，只保留需要的字段
+                    Map<String, Object> map = BeanUtil.beanToMap(r);
+                    map.keySet().retainAll(fields);
+                    result.put(id, BeanUtil.toBean(map, type));
+                }
+            }
+            return null;
+        });
+        stats.rebuild(System.nanoTime() - begin);
+        return result;
+    }
+
+    /**
+     * 原地自增hash缓存中的一个字段，缓存不存在时不做处理
+     * @return 自增后的值，缓存不存在时返回null
+     */
+    public Long incrementField(String key, String field, long delta) {
+        return stringRedisTemplate.execute(HASH_INCR_SCRIPT, Collections.singletonList(key), field, String.valueOf(delta));
+    }
+
+    private void writeHash(RedisConnection connection, String key, Object value, Long ttl, TimeUnit unit) {
+        Map<byte[], byte[]> hash = new HashMap<>();
+        if (value == null) {
+            //数据库中不存在，写入空值标记
+            hash.put(rawKey(HASH_EXISTS_FIELD), rawKey("0"));
+            ttl = RedisConstants.CACHE_NULL_TTL;
+            unit = TimeUnit.MINUTES;
+        } else {
+            BeanUtil.beanToMap(value, new HashMap<>(), CopyOptions.create().setIgnoreNullValue(true))
+                    .forEach((field, fieldValue) -> hash.put(rawKey(field), rawKey(fieldValue.toString())));
+            hash.put(rawKey(HASH_EXISTS_FIELD), rawKey("1"));
+        }
+        byte[] rawKey = rawKey(key);
+        //先删除，避免残留旧的字段
+        connection.del(rawKey);
+        connection.hMSet(rawKey, hash);
+        connection.pExpire(rawKey, unit.toMillis(ttl));
+    }
 
     /**
      * 使用逻辑删除方案解决缓存击穿
+     * 除了过期后重建，还按XFetch算法提前刷新：重建越慢、越接近过期，提前刷新的概率越大，
+     * 热点key通常在过期之前就已经被刷新
      */
     public <R, ID> R queryWithLogicalExpire(String keyPrefix, String lockKeyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit) {
+        return queryWithLogicalExpire(keyPrefix, lockKeyPrefix, id, (Type) type, dbFallback, ttl, unit);
+    }
+
+    /**
+     * 使用逻辑删除方案解决缓存击穿，type可以是泛型类型
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, String lockKeyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheMetrics.PrefixStats stats = cacheMetrics.of(keyPrefix);
         //1. 从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
         //2. 判断是否存在
-        if (!StringUtils.hasText(json)) {
+        if (bytes == null || bytes.length == 0) {
             //3. 不存在，直接返回
+            stats.miss();
             return null;
         }
-        //4. 命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //5.判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        //4. 命中，反序列化，data直接解析为目标类型
+        RedisData redisData = cacheCodecs.decodeLogical(bytes, type);
+        if (redisData == null) {
+            //4.1 结构不一致，旧数据无法使用，同步重建；同一节点只有一个请求负责，跨节点用互斥锁
+            stats.miss();
+            return rebuildLogical(key, lockKeyPrefix + id, id, type, dbFallback, ttl, unit, stats, true);
+        }
+        stats.hit(bytes.length);
+        R r = (R) redisData.getData();
+        //5.判断是否过期，或者需要提前刷新
+        if (!shouldRefresh(redisData)) {
             //5.1 未过期，直接返回店铺信息
             return r;
         }
-        //5.2 过期，需要缓存重建
-        //6. 缓存重建
-        //6.1 获取互斥锁
+        //5.2 过期或提前刷新，需要缓存重建
+        //6. 缓存重建，提交到重建线程池，同一个key只提交一次，队列满时放弃本次重建
         String lockKey = lockKeyPrefix + id;
-        boolean isLock = tryLock(lockKey);
-        //6.2 判断是否获取锁成功
-        if (isLock) {
-            //6.3 成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+        cacheRebuildExecutor.submit(key, () -> {
+            //6.1 获取互斥锁，其他节点正在重建时放弃
+            if (!tryLock(lockKey)) {
+                stats.lockFail();
+                return;
+            }
+            try {
+                //6.2 查询数据库并记录耗时
+                long begin = System.nanoTime();
+                R r1 = dbFallback.apply(id);
+                //6.3 写入redis
+                this.setWithLogicalExpire(key, r1, ttl, unit, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                stats.rebuild(System.nanoTime() - begin);
+            } finally {
+                //6.4 释放锁
+                unlock(lockKey);
+            }
+        });
+        //7. 返回旧的店铺数据
+        return r;
+    }
+
+    /**
+     * 加载未预热的逻辑过期key：加锁查询数据库后写入，之后由逻辑过期方案维护
+     * 数据库中不存在时不写入，避免为不存在的id留下永不过期的key
+     */
+    public <R, ID> R loadWithLogicalExpire(String keyPrefix, String lockKeyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit) {
+        return rebuildLogical(keyPrefix + id, lockKeyPrefix + id, id, type, dbFallback, ttl, unit, cacheMetrics.of(keyPrefix), false);
+    }
+
+    /**
+     * 同一节点的并发请求只有一个负责重建，其余请求等待它的结果
+     */
+    @SuppressWarnings("unchecked")
+    private <R, ID> R rebuildLogical(String key, String lockKey, ID id, Type type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit, CacheMetrics.PrefixStats stats, boolean cacheNull) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = rebuildsInFlight.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return (R) awaitRebuild(inFlight, id, dbFallback);
+        }
+        try {
+            R r = rebuildLogicalWithMutex(key, lockKey, id, type, dbFallback, ttl, unit, stats, cacheNull);
+            future.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            rebuildsInFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 逻辑过期缓存无法解析时同步重建：获取互斥锁后查询数据库写入缓存；
+     * 锁被其他节点持有时等待其重建完成的通知，有限次数后仍未成功则直接查询数据库
+     */
+    @SuppressWarnings("unchecked")
+    private <R, ID> R rebuildLogicalWithMutex(String key, String lockKey, ID id, Type type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit, CacheMetrics.PrefixStats stats, boolean cacheNull) {
+        for (int i = 0; i < RedisConstants.CACHE_REBUILD_RETRY; i++) {
+            //1. 获取互斥锁
+            if (tryLock(lockKey)) {
                 try {
-                    //重建缓存
-                    //查询数据库
-                    R r1 = dbFallback.apply(id);
-                    //写入redis
-                    this.setWithLogicalExpire(key, r1, ttl, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    //2. 成功，再次检查缓存，其他节点可能刚刚完成重建
+                    Object cached = readLogical(key, type);
+                    if (cached != MISS) {
+                        return (R) cached;
+                    }
+                    //3. 查询数据库并写入redis
+                    long begin = System.nanoTime();
+                    R r = dbFallback.apply(id);
+                    if (r != null || cacheNull) {
+                        this.setWithLogicalExpire(key, r, ttl, unit, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                    }
+                    stats.rebuild(System.nanoTime() - begin);
+                    return r;
                 } finally {
-                    //释放锁
+                    //4. 释放互斥锁，通知等待的节点
                     unlock(lockKey);
+                    cacheRebuildSignal.publish(key);
                 }
-            });
+            }
+            //5. 失败，先登记等待再检查缓存，避免错过通知
+            stats.lockFail();
+            CountDownLatch latch = cacheRebuildSignal.register(key);
+            Object cached = readLogical(key, type);
+            if (cached != MISS) {
+                return (R) cached;
+            }
+            try {
+                cacheRebuildSignal.await(key, latch, RedisConstants.CACHE_REBUILD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            cached = readLogical(key, type);
+            if (cached != MISS) {
+                return (R) cached;
+            }
+        }
+        log.warn("缓存重建等待次数耗尽，直接查询数据库，key：{}", key);
+        return dbFallback.apply(id);
+    }
 
+    /**
+     * 读取逻辑过期缓存中的数据，不存在或结构不一致返回MISS
+     */
+    private Object readLogical(String key, Type type) {
+        byte[] bytes = getRaw(key);
+        if (bytes == null || bytes.length == 0) {
+            return MISS;
         }
-        //6.4返回过期的店铺数据
-        return r;
+        RedisData redisData = cacheCodecs.decodeLogical(bytes, type);
+        return redisData == null ? MISS : redisData.getData();
+    }
+
+    /**
+     * XFetch：now - rebuildCost * beta * ln(random) >= expireTime 时刷新
+     * ln(random)为负数，相当于把当前时间随机向后推移，推移的期望值与重建耗时成正比
+     */
+    private boolean shouldRefresh(RedisData redisData) {
+        long now = System.currentTimeMillis();
+        long expireMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Long rebuildCost = redisData.getRebuildCost();
+        if (rebuildCost == null || rebuildCost <= 0) {
+            return now >= expireMillis;
+        }
+        double gap = -rebuildCost * RedisConstants.CACHE_XFETCH_BETA * Math.log(ThreadLocalRandom.current().nextDouble());
+        return now + gap >= expireMillis;
     }
 
     /**
      * 使用互斥锁方案解决缓存击穿
      */
     public <R,ID> R queryWithMutex(String keyPrefix, String lockKeyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit) {
+        return queryWithMutex(keyPrefix, lockKeyPrefix, id, (Type) type, dbFallback, ttl, unit);
+    }
+
+    /**
+     * 使用互斥锁方案解决缓存击穿，type可以是泛型类型
+     */
+    @SuppressWarnings("unchecked")
+    public <R,ID> R queryWithMutex(String keyPrefix, String lockKeyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheMetrics.PrefixStats stats = cacheMetrics.of(keyPrefix);
+        //0. 先查本地缓存
+        Object local = localCache.get(keyPrefix, key);
+        if (local != null) {
+            stats.localHit();
+            return (R) local;
+        }
+        //0.1 布隆过滤器判定不存在，直接返回，不再访问redis和数据库
+        if (!bloomFilterRegistry.mightContain(keyPrefix, id)) {
+            stats.bloomReject();
+            return null;
+        }
         //1. 从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
         //2. 判断是否存在
-        if (StringUtils.hasText(json)) {
-            //3. 存在，直接返回
-            return JSONUtil.toBean(json, type);
-        }
-        //判断命中的是否是空值
-        if (json != null) {
-            //返回错误信息
+        if (bytes != null && bytes.length > 0) {
+            //3. 存在，写入本地缓存并返回；结构不一致时解析为null，按未命中处理
+            R cached = cacheCodecs.decode(bytes, type);
+            if (cached != null) {
+                stats.hit(bytes.length);
+                localCache.put(keyPrefix, key, cached);
+                return cached;
+            }
+        } else if (bytes != null) {
+            //判断命中的是否是空值，返回错误信息
+            stats.nullHit();
             return null;
         }
-        //4. 实现缓存重建
-        //4.1 获取互斥锁
-        String lockKey = lockKeyPrefix + id;
-        R r = null;
+        stats.miss();
+        //4. 实现缓存重建，同一节点的并发请求只有一个负责重建，其余请求等待它的结果
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = rebuildsInFlight.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return (R) awaitRebuild(inFlight, id, dbFallback);
+        }
         try {
-            boolean isLock = tryLock(lockKey);
-            //4.2 判断是否获取成功
-            if (!isLock) {
-                //4.3 失败，休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, lockKeyPrefix, id, type, dbFallback, ttl, unit);
-            }
-
-            //不存在，根据id查询数据库
-            r = dbFallback.apply(id);
-            if (Objects.isNull(r)) {
-                //5. 数据库中不存在，返回错误
-                //将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            //6. 数据库中存在，写入redis
-            this.set(key, r, ttl, unit);
+            R r = rebuildWithMutex(keyPrefix, key, lockKeyPrefix + id, id, type, dbFallback, ttl, unit, stats);
+            future.complete(r);
+            //8. 返回数据
+            return r;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            rebuildsInFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 同一节点的其他请求等待正在进行的重建，超时后直接查询数据库
+     */
+    private <ID> Object awaitRebuild(CompletableFuture<Object> inFlight, ID id, Function<ID, ?> dbFallback) {
+        try {
+            return inFlight.get(RedisConstants.CACHE_REBUILD_AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("等待缓存重建超时，直接查询数据库，id：{}", id);
+            return dbFallback.apply(id);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
-        } finally {
-            //7. 释放互斥锁
-            unlock(lockKey);
         }
-        //8. 返回数据
-        return r;
+    }
+
+    /**
+     * 本节点负责重建的请求：获取互斥锁后查询数据库写入缓存；
+     * 锁被其他节点持有时等待其重建完成的通知，有限次数后仍未成功则直接查询数据库
+     */
+    @SuppressWarnings("unchecked")
+    private <R, ID> R rebuildWithMutex(String keyPrefix, String key, String lockKey, ID id, Type type, Function<ID, R> dbFallback, Long ttl, TimeUnit unit, CacheMetrics.PrefixStats stats) {
+        for (int i = 0; i < RedisConstants.CACHE_REBUILD_RETRY; i++) {
+            //4.1 获取互斥锁
+            boolean isLock = tryLock(lockKey);
+            //4.2 判断是否获取成功
+            if (isLock) {
+                try {
+                    //4.3 成功，再次检查缓存，其他节点可能刚刚完成重建
+                    Object cached = readCache(keyPrefix, key, type);
+                    if (cached != MISS) {
+                        return (R) cached;
+                    }
+                    //不存在，根据id查询数据库
+                    long begin = System.nanoTime();
+                    R r = dbFallback.apply(id);
+                    if (Objects.isNull(r)) {
+                        //5. 数据库中不存在，返回错误
+                        //将空值写入redis
+                        setRaw(key, NULL_MARKER, RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    } else {
+                        //6. 数据库中存在，写入redis和本地缓存
+                        this.set(key, r, ttl, unit);
+                        localCache.put(keyPrefix, key, r);
+                    }
+                    stats.rebuild(System.nanoTime() - begin);
+                    return r;
+                } finally {
+                    //7. 释放互斥锁，通知等待的节点
+                    unlock(lockKey);
+                    cacheRebuildSignal.publish(key);
+                }
+            }
+            //4.4 失败，先登记等待再检查缓存，避免错过通知
+            stats.lockFail();
+            CountDownLatch latch = cacheRebuildSignal.register(key);
+            Object cached = readCache(keyPrefix, key, type);
+            if (cached != MISS) {
+                return (R) cached;
+            }
+            try {
+                cacheRebuildSignal.await(key, latch, RedisConstants.CACHE_REBUILD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            cached = readCache(keyPrefix, key, type);
+            if (cached != MISS) {
+                return (R) cached;
+            }
+        }
+        log.warn("缓存重建等待次数耗尽，直接查询数据库，key：{}", key);
+        return dbFallback.apply(id);
+    }
+
+    /**
+     * 读取redis中的缓存，未命中返回MISS，命中空值返回null
+     */
+    private Object readCache(String keyPrefix, String key, Type type) {
+        byte[] bytes = getRaw(key);
+        if (bytes == null) {
+            return MISS;
+        }
+        if (bytes.length == 0) {
+            return null;
+        }
+        Object cached = cacheCodecs.decode(bytes, type);
+        if (cached == null) {
+            return MISS;
+        }
+        localCache.put(keyPrefix, key, cached);
+        return cached;
     }
 
     private boolean tryLock(String key) {
@@ -181,5 +712,26 @@ public class CacheClient {
         stringRedisTemplate.delete(key);
     }
 
+    /**
+     * 直接读写字节，绕过StringRedisTemplate的字符串序列化，二进制编码的数据才能原样存取
+     */
+    private byte[] getRaw(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+    }
+
+    private void setRaw(String key, byte[] value, Long ttl, TimeUnit unit) {
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            if (ttl == null) {
+                connection.set(rawKey(key), value);
+            } else {
+                connection.set(rawKey(key), value, Expiration.from(ttl, unit), RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
 
 }
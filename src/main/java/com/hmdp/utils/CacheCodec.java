@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+
+/**
+ * 缓存值的编解码器
+ * 写入时使用配置的编解码器，读取时根据数据头部自动选择，保证滚动升级期间新旧格式可以共存
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器名称，对应配置项 hmdp.cache.codec
+     */
+    String name();
+
+    /**
+     * 判断数据是否由本编解码器写入
+     */
+    boolean supports(byte[] bytes);
+
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化，数据与目标类型的结构不一致时返回null，按缓存未命中处理
+     * @param type 目标类型，可以是普通的Class，也可以是List&lt;T&gt;这样的泛型类型
+     */
+    <T> T decode(byte[] bytes, Type type);
+
+    /**
+     * 序列化逻辑过期的缓存
+     * @param rebuildCost 本次重建耗时（毫秒）
+     */
+    byte[] encodeLogical(Object value, LocalDateTime expireTime, long rebuildCost);
+
+    /**
+     * 反序列化逻辑过期的缓存，返回的RedisData中data已经是目标类型
+     */
+    RedisData decodeLogical(byte[] bytes, Type type);
+}
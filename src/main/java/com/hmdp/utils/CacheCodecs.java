@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 管理所有的缓存编解码器
+ * 写入统一使用 hmdp.cache.codec 配置的编解码器，读取时按数据头部选择对应的编解码器
+ */
+@Slf4j
+@Component
+public class CacheCodecs {
+
+    private final List<CacheCodec> codecs;
+    private final CacheCodec writer;
+
+    public CacheCodecs(List<CacheCodec> codecs, @Value("${hmdp.cache.codec:json}") String codecName) {
+        this.codecs = codecs;
+        this.writer = codecs.stream()
+                .filter(codec -> codec.name().equals(codecName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("未知的缓存编码方式：" + codecName));
+        log.info("缓存编码方式：{}", codecName);
+    }
+
+    public byte[] encode(Object value) {
+        return writer.encode(value);
+    }
+
+    public byte[] encodeLogical(Object value, LocalDateTime expireTime, long rebuildCost) {
+        return writer.encodeLogical(value, expireTime, rebuildCost);
+    }
+
+    /**
+     * 反序列化，无法识别的数据或结构不一致时返回null
+     */
+    public <T> T decode(byte[] bytes, Type type) {
+        CacheCodec codec = select(bytes);
+        return codec == null ? null : codec.decode(bytes, type);
+    }
+
+    public RedisData decodeLogical(byte[] bytes, Type type) {
+        CacheCodec codec = select(bytes);
+        return codec == null ? null : codec.decodeLogical(bytes, type);
+    }
+
+    private CacheCodec select(byte[] bytes) {
+        if (writer.supports(bytes)) {
+            return writer;
+        }
+        for (CacheCodec codec : codecs) {
+            if (codec.supports(bytes)) {
+                return codec;
+            }
+        }
+        log.warn("无法识别的缓存数据格式，首字节：{}", bytes[0]);
+        return null;
+    }
+}
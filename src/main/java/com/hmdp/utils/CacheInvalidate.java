@@ -0,0 +1,26 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法执行成功后删除缓存，在事务中时等到提交后再删除
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheInvalidate {
+
+    /**
+     * 缓存key前缀
+     */
+    String keyPrefix();
+
+    /**
+     * SpEL表达式，计算key中前缀之后的部分，例如 #voucher.shopId；为空时使用第一个参数
+     */
+    String key() default "";
+}
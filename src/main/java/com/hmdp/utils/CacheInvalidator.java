@@ -0,0 +1,147 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 基于发件箱的缓存失效
+ * 1. 与业务数据在同一事务中写入发件箱
+ * 2. 事务提交后异步删除缓存，延迟一段时间再删除一次，防止并发读在提交前把旧数据写回缓存
+ * 3. 两次删除都成功后移除发件箱记录；失败或节点宕机时由定时任务按发件箱重试
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidator {
+
+    private static final long MAX_RETRY_BACKOFF_SECONDS = 300;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LocalCache localCache;
+    private final CacheOutboxMapper cacheOutboxMapper;
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newScheduledThreadPool(2, new NamedThreadFactory("cache-invalidate-", true));
+
+    /**
+     * 登记需要删除的缓存，在事务中调用时等到提交后再删除
+     */
+    public void invalidate(String... keys) {
+        //1. 写入发件箱，宕机前未处理完的记录由定时任务接手
+        LocalDateTime nextRetryTime = LocalDateTime.now().plusSeconds(CACHE_OUTBOX_RETRY_SECONDS);
+        List<CacheOutbox> rows = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            CacheOutbox row = new CacheOutbox().setCacheKey(key).setRetryCount(0).setNextRetryTime(nextRetryTime);
+            cacheOutboxMapper.insert(row);
+            rows.add(row);
+        }
+        //2. 事务提交后再删除缓存，没有事务时直接删除
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    scheduleDelete(rows);
+                }
+            });
+        } else {
+            scheduleDelete(rows);
+        }
+    }
+
+    /**
+     * 延迟双删，不阻塞写请求
+     */
+    private void scheduleDelete(List<CacheOutbox> rows) {
+        List<String> keys = rows.stream().map(CacheOutbox::getCacheKey).collect(Collectors.toList());
+        List<Long> ids = rows.stream().map(CacheOutbox::getId).collect(Collectors.toList());
+        //1. 立即删除一次
+        scheduler.execute(() -> deleteQuietly(keys));
+        //2. 延迟再删除一次，成功后移除发件箱记录
+        scheduler.schedule(() -> {
+            if (deleteQuietly(keys)) {
+                cacheOutboxMapper.deleteBatchIds(ids);
+            }
+        }, CACHE_DOUBLE_DELETE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按发件箱重试到期未完成的删除
+     */
+    @Scheduled(fixedDelayString = "${hmdp.cache.outbox-retry-interval:5000}")
+    public void retryPending() {
+        //1. 查询到期的记录
+        List<CacheOutbox> rows = cacheOutboxMapper.selectList(new QueryWrapper<CacheOutbox>()
+                .le("next_retry_time", LocalDateTime.now())
+                .orderByAsc("id")
+                .last("limit " + CACHE_OUTBOX_BATCH_SIZE));
+        if (rows.isEmpty()) {
+            return;
+        }
+        //2. 批量删除缓存
+        List<String> keys = rows.stream().map(CacheOutbox::getCacheKey).distinct().collect(Collectors.toList());
+        if (deleteQuietly(keys)) {
+            cacheOutboxMapper.deleteBatchIds(rows.stream().map(CacheOutbox::getId).collect(Collectors.toList()));
+            log.info("缓存失效重试成功，数量：{}", keys.size());
+            return;
+        }
+        //3. 失败，按指数退避推迟下次重试
+        for (CacheOutbox row : rows) {
+            int retryCount = row.getRetryCount() + 1;
+            long backoff = Math.min(1L << Math.min(retryCount, 30), MAX_RETRY_BACKOFF_SECONDS);
+            cacheOutboxMapper.updateById(new CacheOutbox().setId(row.getId())
+                    .setRetryCount(retryCount).setNextRetryTime(LocalDateTime.now().plusSeconds(backoff)));
+        }
+    }
+
+    /**
+     * 通过管道批量UNLINK，同时通知所有节点删除本地缓存
+     * @return false代表删除失败，需要重试
+     */
+    private boolean deleteQuietly(Collection<String> keys) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (List<String> batch : CollUtil.split(keys, CACHE_OUTBOX_BATCH_SIZE)) {
+                    connection.unlink(batch.stream()
+                            .map(key -> key.getBytes(StandardCharsets.UTF_8))
+                            .toArray(byte[][]::new));
+                }
+                return null;
+            });
+            keys.forEach(localCache::publishInvalidate);
+            return true;
+        } catch (Exception e) {
+            log.warn("删除缓存失败，等待重试，key：{}", keys, e);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        //未执行的删除仍在发件箱中，由其他节点或重启后的定时任务重试
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,137 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按keyPrefix统计缓存命中、空值命中、锁竞争失败、重建耗时和数据大小
+ * 计数使用LongAdder，直方图使用HdrHistogram，记录时都不加锁
+ */
+@Slf4j
+@Component
+public class CacheMetrics {
+
+    private final Map<String, PrefixStats> stats = new ConcurrentHashMap<>();
+
+    public PrefixStats of(String keyPrefix) {
+        PrefixStats prefixStats = stats.get(keyPrefix);
+        return prefixStats != null ? prefixStats : stats.computeIfAbsent(keyPrefix, k -> new PrefixStats());
+    }
+
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        stats.forEach((keyPrefix, prefixStats) -> snapshot.put(keyPrefix, prefixStats.snapshot()));
+        return snapshot;
+    }
+
+    @Scheduled(fixedRateString = "${hmdp.cache.stats-log-interval:60000}")
+    public void logStats() {
+        stats.forEach((keyPrefix, prefixStats) -> log.info("缓存统计，前缀：{}，{}", keyPrefix, prefixStats.snapshot()));
+    }
+
+    public static class PrefixStats {
+
+        private static final long MAX_REBUILD_MICROS = TimeUnit.MINUTES.toMicros(1);
+        private static final long MAX_PAYLOAD_BYTES = 64L * 1024 * 1024;
+
+        private final LongAdder localHits = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder nullHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder bloomRejects = new LongAdder();
+        private final LongAdder lockFails = new LongAdder();
+        private final Histogram rebuildMicros = new ConcurrentHistogram(MAX_REBUILD_MICROS, 2);
+        private final Histogram payloadBytes = new ConcurrentHistogram(MAX_PAYLOAD_BYTES, 2);
+
+        /**
+         * 本地缓存命中
+         */
+        public void localHit() {
+            localHits.increment();
+        }
+
+        /**
+         * redis命中，同时记录数据大小
+         */
+        public void hit(int payloadSize) {
+            hits.increment();
+            payload(payloadSize);
+        }
+
+        /**
+         * 命中空值标记
+         */
+        public void nullHit() {
+            nullHits.increment();
+        }
+
+        public void miss() {
+            misses.increment();
+        }
+
+        /**
+         * 布隆过滤器拦截
+         */
+        public void bloomReject() {
+            bloomRejects.increment();
+        }
+
+        /**
+         * 没有抢到重建的互斥锁
+         */
+        public void lockFail() {
+            lockFails.increment();
+        }
+
+        /**
+         * 记录一次重建（查询数据库并写入缓存）的耗时
+         */
+        public void rebuild(long nanos) {
+            rebuildMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_REBUILD_MICROS));
+        }
+
+        public void payload(int size) {
+            payloadBytes.recordValue(Math.min(size, MAX_PAYLOAD_BYTES));
+        }
+
+        public Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            long local = localHits.sum();
+            long hit = hits.sum();
+            long nullHit = nullHits.sum();
+            long miss = misses.sum();
+            long total = local + hit + nullHit + miss;
+            snapshot.put("localHits", local);
+            snapshot.put("hits", hit);
+            snapshot.put("nullHits", nullHit);
+            snapshot.put("misses", miss);
+            snapshot.put("hitRatio", total == 0 ? 0 : (double) (local + hit + nullHit) / total);
+            snapshot.put("bloomRejects", bloomRejects.sum());
+            snapshot.put("lockFails", lockFails.sum());
+            snapshot.put("rebuildMicros", summary(rebuildMicros));
+            snapshot.put("payloadBytes", summary(payloadBytes));
+            return snapshot;
+        }
+
+        private static Map<String, Object> summary(Histogram histogram) {
+            Histogram copy = histogram.copy();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", copy.getTotalCount());
+            summary.put("mean", Math.round(copy.getMean()));
+            summary.put("p50", copy.getValueAtPercentile(50));
+            summary.put("p99", copy.getValueAtPercentile(99));
+            summary.put("max", copy.getMaxValue());
+            return summary;
+        }
+    }
+}
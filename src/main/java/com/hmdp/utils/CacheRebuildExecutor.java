@@ -0,0 +1,97 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 逻辑过期缓存的异步重建线程池
+ * 有界队列，同一个key同时只会有一个重建任务；队列满时直接丢弃，调用方继续返回旧数据
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private static final int POOL_SIZE = 10;
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            new NamedThreadFactory("cache-rebuild-", false), new ThreadPoolExecutor.AbortPolicy());
+
+    /**
+     * 已提交尚未完成的key，用于去重
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * 提交重建任务
+     * @return false代表该key已有任务在排队或执行，或者队列已满被丢弃
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                running.incrementAndGet();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("缓存重建失败，key：{}", key, e);
+                } finally {
+                    running.decrementAndGet();
+                    pendingKeys.remove(key);
+                }
+            });
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            rejected.increment();
+            log.debug("缓存重建队列已满，丢弃任务，key：{}", key);
+            return false;
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queued", (long) executor.getQueue().size());
+        stats.put("running", (long) running.get());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("缓存重建任务未能在{}秒内完成，强制关闭，丢弃任务数：{}",
+                    SHUTDOWN_TIMEOUT_SECONDS, executor.shutdownNow().size());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.hmdp.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_REBUILD_CHANNEL;
+
+/**
+ * 缓存重建完成的跨节点通知
+ * 没有抢到互斥锁的节点在这里等待持锁节点的通知，代替休眠轮询
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheRebuildSignal implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Map<String, CountDownLatch> waiters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CACHE_REBUILD_CHANNEL));
+    }
+
+    /**
+     * 登记等待，必须在再次检查缓存之前调用，避免错过通知
+     */
+    public CountDownLatch register(String key) {
+        return waiters.computeIfAbsent(key, k -> new CountDownLatch(1));
+    }
+
+    /**
+     * 等待重建完成的通知，超时返回false
+     */
+    public boolean await(String key, CountDownLatch latch, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean notified = latch.await(timeout, unit);
+        if (!notified) {
+            waiters.remove(key, latch);
+        }
+        return notified;
+    }
+
+    /**
+     * 重建完成后通知所有节点
+     */
+    public void publish(String key) {
+        stringRedisTemplate.convertAndSend(CACHE_REBUILD_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CountDownLatch latch = waiters.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+}
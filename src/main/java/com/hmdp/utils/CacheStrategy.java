@@ -0,0 +1,19 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存查询方案，对应CacheClient中的查询方法
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值，解决缓存穿透
+     */
+    PASS_THROUGH,
+    /**
+     * 在缓存空值的基础上，使用互斥锁解决缓存击穿
+     */
+    MUTEX,
+    /**
+     * 逻辑过期，过期后返回旧数据并异步重建
+     */
+    LOGICAL_EXPIRE
+}
@@ -0,0 +1,39 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用CacheClient缓存方法的返回值，缓存key为 keyPrefix + key
+ * 方法返回值就是缓存的数据，返回null代表数据不存在
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cached {
+
+    /**
+     * 缓存key前缀
+     */
+    String keyPrefix();
+
+    /**
+     * SpEL表达式，计算key中前缀之后的部分，例如 #id；为空时使用第一个参数
+     */
+    String key() default "";
+
+    CacheStrategy strategy() default CacheStrategy.PASS_THROUGH;
+
+    long ttl();
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    /**
+     * TTL随机增加的比例，避免同时写入的key同时过期
+     */
+    double jitter() default 0.1;
+}
@@ -0,0 +1,181 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.hmdp.utils.RedisConstants.CACHE_HOT_LOCAL_TTL;
+
+/**
+ * 热点key探测
+ * 读请求只对Count-Min Sketch做原子自增，估计值超过阈值的key记为候选；
+ * 每个时间窗口结束时从候选中选出Top-K作为热点，热点key的数据在本地保存一份短TTL副本，
+ * 冷却后移除。计数在窗口结束时减半，既能反映最近的访问量，又不会因为一个窗口的波动频繁升降级
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 13;
+    private static final int MASK = WIDTH - 1;
+
+    private final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+
+    /**
+     * 本窗口内估计值超过阈值的key，数量有上限
+     */
+    private final Map<String, Boolean> candidates = new ConcurrentHashMap<>();
+    private final AtomicInteger candidateCount = new AtomicInteger();
+
+    private final Cache<String, Object> hotValues;
+
+    private final long threshold;
+    private final int topK;
+
+    private volatile Set<String> hotKeys = Collections.emptySet();
+    private volatile List<HotKey> hotKeyList = Collections.emptyList();
+
+    public HotKeyDetector(@Value("${hmdp.cache.hot-key.threshold:100}") long threshold,
+                          @Value("${hmdp.cache.hot-key.top-k:20}") int topK) {
+        this.threshold = threshold;
+        this.topK = topK;
+        this.hotValues = Caffeine.newBuilder()
+                .maximumSize(topK)
+                .expireAfterWrite(CACHE_HOT_LOCAL_TTL, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 记录一次访问，读路径上不加锁，只有成为候选时才会分配对象
+     */
+    public void record(String key) {
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(i * WIDTH + ((h1 + i * h2) & MASK)));
+        }
+        if (estimate >= threshold && !hotKeys.contains(key) && !candidates.containsKey(key)
+                && candidateCount.get() < topK * 4) {
+            if (candidates.putIfAbsent(key, Boolean.TRUE) == null) {
+                candidateCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 查询热点key的本地副本，非热点或已过期时返回null
+     */
+    public Object get(String key) {
+        return hotKeys.contains(key) ? hotValues.getIfPresent(key) : null;
+    }
+
+    /**
+     * 热点key才会保存本地副本
+     */
+    public void putIfHot(String key, Object value) {
+        if (value != null && hotKeys.contains(key)) {
+            hotValues.put(key, value);
+        }
+    }
+
+    public void invalidate(String key) {
+        hotValues.invalidate(key);
+    }
+
+    /**
+     * 当前的热点key，按估计访问量倒序
+     */
+    public List<HotKey> hotKeys() {
+        return hotKeyList;
+    }
+
+    /**
+     * 窗口结束：从候选和现有热点中选出Top-K，升级新热点、降级冷却的key，然后衰减计数
+     */
+    @Scheduled(fixedRateString = "${hmdp.cache.hot-key.window:1000}")
+    public void rotate() {
+        //1. 用小顶堆选出估计值最高的K个key
+        Set<String> keys = new HashSet<>(candidates.keySet());
+        keys.addAll(hotKeys);
+        PriorityQueue<HotKey> heap = new PriorityQueue<>(topK + 1, Comparator.comparingLong(HotKey::getCount));
+        for (String key : keys) {
+            long count = estimate(key);
+            if (count < threshold) {
+                continue;
+            }
+            heap.offer(new HotKey(key, count));
+            if (heap.size() > topK) {
+                heap.poll();
+            }
+        }
+        List<HotKey> top = new ArrayList<>(heap);
+        top.sort(Comparator.comparingLong(HotKey::getCount).reversed());
+        Set<String> newHotKeys = new HashSet<>();
+        top.forEach(hotKey -> newHotKeys.add(hotKey.getKey()));
+        //2. 降级冷却的key
+        for (String key : hotKeys) {
+            if (!newHotKeys.contains(key)) {
+                hotValues.invalidate(key);
+                log.debug("热点key冷却：{}", key);
+            }
+        }
+        hotKeys = newHotKeys;
+        hotKeyList = Collections.unmodifiableList(top);
+        //3. 清空候选，计数减半
+        candidates.clear();
+        candidateCount.set(0);
+        for (int i = 0; i < counters.length(); i++) {
+            long count = counters.get(i);
+            if (count != 0) {
+                counters.set(i, count >> 1);
+            }
+        }
+    }
+
+    private long estimate(String key) {
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, counters.get(i * WIDTH + ((h1 + i * h2) & MASK)));
+        }
+        return estimate;
+    }
+
+    /**
+     * murmur3的fmix32，打散String.hashCode的低位
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Data
+    public static class HotKey {
+        private final String key;
+        private final long count;
+    }
+}
@@ -0,0 +1,14 @@
+package com.hmdp.utils;
+
+/**
+ * 全局唯一id生成器，高位都是从BEGIN_TIMESTAMP开始的秒数，不同实现生成的id可以一起排序
+ */
+public interface IdWorker {
+
+    /**
+     * 生成id
+     * @param keyPrefix 业务前缀，按业务区分序列号的实现使用
+     * @return 全局唯一、随时间递增的id
+     */
+    long nextId(String keyPrefix);
+}
@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.dto.Result;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_IDEMPOTENCY_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_IDEMPOTENCY_PENDING_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_IDEMPOTENCY_TTL;
+
+/**
+ * 秒杀请求凭证，保证客户端超时重试的幂等
+ * 客户端下单前领取凭证，下单时带上；第一次请求正常处理并把结果记录到redis，
+ * 同一凭证的重试请求直接返回记录的结果，不再经过限流、锁和数据库；
+ * 没有领取过或已过期的凭证直接拒绝，处理中的请求超过截止时间未完成时允许重试
+ */
+@Component
+@RequiredArgsConstructor
+public class IdempotencyTokens {
+
+    private static final DefaultRedisScript<String> CLAIM_SCRIPT;
+    static {
+        CLAIM_SCRIPT = new DefaultRedisScript<>();
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("idempotency_claim.lua"));
+        CLAIM_SCRIPT.setResultType(String.class);
+    }
+
+    private static final String ISSUED = "issued";
+    private static final String PENDING = "pending:";
+    private static final String OK_PREFIX = "ok:";
+    private static final String FAIL_PREFIX = "fail:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 领取凭证
+     */
+    public String issue(Long userId, Long voucherId) {
+        String token = UUID.randomUUID().toString(true);
+        stringRedisTemplate.opsForValue().set(key(userId, voucherId, token), ISSUED, SECKILL_IDEMPOTENCY_TTL, TimeUnit.MINUTES);
+        return token;
+    }
+
+    /**
+     * 占用凭证
+     * @return null代表第一次请求，需要继续处理；否则为第一次请求的结果
+     */
+    public Result claim(Long userId, Long voucherId, String token) {
+        String value = stringRedisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(key(userId, voucherId, token)),
+                ISSUED, PENDING, String.valueOf(System.currentTimeMillis()),
+                String.valueOf(TimeUnit.SECONDS.toMillis(SECKILL_IDEMPOTENCY_PENDING_TTL)),
+                String.valueOf(TimeUnit.MINUTES.toMillis(SECKILL_IDEMPOTENCY_TTL)));
+        if (value == null) {
+            return Result.fail("下单凭证无效或已过期，请重新获取！");
+        }
+        if (value.isEmpty()) {
+            return null;
+        }
+        if (PENDING.equals(value)) {
+            return Result.fail("请求正在处理中，请稍后重试！");
+        }
+        if (value.startsWith(OK_PREFIX)) {
+            return Result.ok(Long.valueOf(value.substring(OK_PREFIX.length())));
+        }
+        return Result.fail(value.substring(FAIL_PREFIX.length()));
+    }
+
+    /**
+     * 记录处理结果，重试请求直接返回
+     */
+    public void complete(Long userId, Long voucherId, String token, Result result) {
+        String value = Boolean.TRUE.equals(result.getSuccess())
+                ? OK_PREFIX + result.getData()
+                : FAIL_PREFIX + result.getErrorMsg();
+        stringRedisTemplate.opsForValue().set(key(userId, voucherId, token), value, SECKILL_IDEMPOTENCY_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 请求没有被处理（例如被限流），释放凭证，允许重试
+     */
+    public void release(Long userId, Long voucherId, String token) {
+        stringRedisTemplate.opsForValue().set(key(userId, voucherId, token), ISSUED, SECKILL_IDEMPOTENCY_TTL, TimeUnit.MINUTES);
+    }
+
+    private static String key(Long userId, Long voucherId, String token) {
+        return SECKILL_IDEMPOTENCY_KEY + userId + ":" + voucherId + ":" + token;
+    }
+}
@@ -0,0 +1,75 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 基于Hutool的json编解码器，与之前直接使用JSONUtil写入的数据完全兼容
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(byte[] bytes) {
+        // json以 { [ " 或者数字、true/false/null 开头，都是可见字符
+        return bytes.length > 0 && bytes[0] >= 0x20;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, Type type) {
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == List.class) {
+            Type elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            return (T) JSONUtil.toList(json, (Class<?>) elementType);
+        }
+        if (type instanceof Class) {
+            return JSONUtil.toBean(json, (Class<T>) type);
+        }
+        return JSONUtil.toBean(json, type, false);
+    }
+
+    @Override
+    public byte[] encodeLogical(Object value, LocalDateTime expireTime, long rebuildCost) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        redisData.setRebuildCost(rebuildCost);
+        return encode(redisData);
+    }
+
+    @Override
+    public RedisData decodeLogical(byte[] bytes, Type type) {
+        // 只解析一次字符串，data部分直接从JSONObject转换为目标类型
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(json.get("expireTime", LocalDateTime.class));
+        redisData.setRebuildCost(json.getLong("rebuildCost"));
+        Object data = json.get("data");
+        if (data instanceof JSONObject) {
+            redisData.setData(((JSONObject) data).toBean(type));
+        } else if (data != null) {
+            redisData.setData(JSONUtil.toBean(JSONUtil.toJsonStr(data), type, false));
+        }
+        return redisData;
+    }
+}
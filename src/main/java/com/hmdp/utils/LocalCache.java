@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 进程内一级缓存（L1），位于Redis之前
+ * 每个keyPrefix对应一个独立的Caffeine缓存，容量有界，按W-TinyLFU淘汰，TTL按前缀单独配置；
+ * 任一节点删除缓存时通过Redis发布订阅通知所有节点删除本地副本；
+ * 未开启本地缓存的前缀中，被探测为热点的key也会保存短TTL的本地副本
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LocalCache implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final HotKeyDetector hotKeyDetector;
+
+    private final Map<String, Cache<String, Object>> caches = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 为指定的keyPrefix开启本地缓存
+     * @param keyPrefix 缓存key前缀
+     * @param maximumSize 最大条目数
+     * @param ttl 写入后的存活时间
+     */
+    public void register(String keyPrefix, long maximumSize, long ttl, TimeUnit unit) {
+        caches.put(keyPrefix, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, unit)
+                .build());
+    }
+
+    /**
+     * 查询本地缓存，同时记录访问用于热点探测，未开启或未命中时返回null
+     */
+    public Object get(String keyPrefix, String key) {
+        hotKeyDetector.record(key);
+        Cache<String, Object> cache = caches.get(keyPrefix);
+        Object value = cache == null ? null : cache.getIfPresent(key);
+        return value != null ? value : hotKeyDetector.get(key);
+    }
+
+    public void put(String keyPrefix, String key, Object value) {
+        if (value == null) {
+            return;
+        }
+        Cache<String, Object> cache = caches.get(keyPrefix);
+        if (cache != null) {
+            cache.put(key, value);
+        } else {
+            hotKeyDetector.putIfHot(key, value);
+        }
+    }
+
+    /**
+     * 删除本节点的本地副本
+     */
+    public void invalidate(String key) {
+        caches.values().forEach(cache -> cache.invalidate(key));
+        hotKeyDetector.invalidate(key);
+    }
+
+    /**
+     * 广播失效消息，所有节点（包括本节点）都会删除本地副本
+     */
+    public void publishInvalidate(String key) {
+        invalidate(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到缓存失效消息，key：{}", key);
+        invalidate(key);
+    }
+}
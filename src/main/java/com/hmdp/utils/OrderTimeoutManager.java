@@ -0,0 +1,208 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEADLINE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+
+/**
+ * 订单支付超时取消
+ * 支付截止时间由秒杀脚本写入redis的zset，保证重启后不丢失；下单的节点同时放入内存中的时间轮，到期后按批取消。
+ * 定时任务从zset中批量取出已经过期却没有被处理的订单（例如节点重启前的订单）兜底取消。
+ * 取消时批量修改订单状态、归还数据库库存，再归还redis库存和下单资格；
+ * 截止时间在redis库存归还的同时删除，删除前一直作为待归还的记录，尚未写入数据库的订单也会保留截止时间
+ */
+@Slf4j
+@Component
+public class OrderTimeoutManager {
+
+    private static final DefaultRedisScript<Long> CANCEL_RETURN_SCRIPT;
+    static {
+        CANCEL_RETURN_SCRIPT = new DefaultRedisScript<>();
+        CANCEL_RETURN_SCRIPT.setLocation(new ClassPathResource("order_cancel_return.lua"));
+        CANCEL_RETURN_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 时间轮正常情况下会先处理，兜底任务只处理过期超过这个时间的订单
+     */
+    private static final long SWEEP_GRACE_MILLIS = 5000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillStockBuckets seckillStockBuckets;
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    /**
+     * 支付超时时间，毫秒
+     */
+    @Value("${hmdp.seckill.pay-timeout:900000}")
+    private long payTimeoutMillis;
+
+    /**
+     * 每批取消的订单数
+     */
+    @Value("${hmdp.seckill.cancel-batch-size:500}")
+    private int batchSize;
+
+    private TimingWheel timingWheel;
+    private final ExecutorService cancelExecutor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("order-timeout-", false));
+
+    private final LongAdder cancelledOrders = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        timingWheel = new TimingWheel("order-timeout-wheel", 1000, 1024,
+                ids -> cancelExecutor.execute(() -> cancel(ids)));
+        timingWheel.start();
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        timingWheel.stop();
+        cancelExecutor.shutdown();
+        cancelExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 按下单时间计算支付截止时间
+     */
+    public long deadline(long now) {
+        return now + payTimeoutMillis;
+    }
+
+    /**
+     * 下单成功后放入时间轮，zset已经由秒杀脚本写入
+     */
+    public void schedule(long orderId, long deadline) {
+        timingWheel.schedule(orderId, deadline);
+    }
+
+    /**
+     * 订单不再需要超时取消，例如写入数据库失败
+     */
+    public void remove(Long orderId) {
+        stringRedisTemplate.opsForZSet().remove(SECKILL_ORDER_DEADLINE_KEY, orderId.toString());
+    }
+
+    /**
+     * 兜底：批量取出zset中过期未处理的订单
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.timeout-sweep-interval:60000}")
+    public void sweep() {
+        long max = System.currentTimeMillis() - SWEEP_GRACE_MILLIS;
+        // 尚未写入数据库的订单留在zset中，跳过它们继续取下一批
+        long offset = 0;
+        while (true) {
+            Set<String> members = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(SECKILL_ORDER_DEADLINE_KEY, 0, max, offset, batchSize);
+            if (members == null || members.isEmpty()) {
+                return;
+            }
+            List<Long> ids = new ArrayList<>(members.size());
+            members.forEach(member -> ids.add(Long.valueOf(member)));
+            offset += members.size() - cancelBatch(ids);
+            if (members.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void cancel(long[] ids) {
+        for (int from = 0; from < ids.length; from += batchSize) {
+            int to = Math.min(from + batchSize, ids.length);
+            List<Long> batch = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                batch.add(ids[i]);
+            }
+            try {
+                cancelBatch(batch);
+            } catch (Exception e) {
+                // 截止时间仍在zset中，由兜底任务重试
+                log.error("取消超时订单失败，数量：{}", batch.size(), e);
+            }
+        }
+    }
+
+    /**
+     * @return 删除了截止时间的订单数
+     */
+    private int cancelBatch(List<Long> ids) {
+        //1. 取消未支付的订单并归还数据库库存，返回数据库中存在的订单
+        List<VoucherOrder> orders = voucherOrderService.cancelUnpaidOrders(ids);
+        //2. 已取消的订单：脚本删除截止时间的同时归还redis库存和下单资格；
+        //   截止时间就是待归还的记录，这一步失败时由兜底任务重试，不会重复归还
+        Map<Long, List<VoucherOrder>> cancelled = orders.stream()
+                .filter(order -> Objects.equals(order.getStatus(), 4))
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId));
+        int count = 0;
+        for (Map.Entry<Long, List<VoucherOrder>> entry : cancelled.entrySet()) {
+            Long voucherId = entry.getKey();
+            List<String> args = new ArrayList<>(entry.getValue().size() * 2);
+            for (VoucherOrder order : entry.getValue()) {
+                args.add(order.getId().toString());
+                args.add(order.getUserId().toString());
+            }
+            Long returned = stringRedisTemplate.execute(CANCEL_RETURN_SCRIPT,
+                    Arrays.asList(SECKILL_ORDER_DEADLINE_KEY, seckillStockBuckets.returnKey(voucherId), SECKILL_ORDER_KEY + voucherId),
+                    args.toArray());
+            if (returned != null && returned > 0) {
+                seckillStockBuckets.stockReturned(voucherId);
+                count += returned;
+            }
+        }
+        //3. 已支付等其他状态的订单不再需要取消，删除截止时间；
+        //   数据库中还没有的订单（仍在消息队列中）保留截止时间，写入后再处理
+        List<String> settled = orders.stream()
+                .filter(order -> !Objects.equals(order.getStatus(), 1) && !Objects.equals(order.getStatus(), 4))
+                .map(order -> order.getId().toString())
+                .collect(Collectors.toList());
+        Long removed = settled.isEmpty() ? 0L
+                : stringRedisTemplate.opsForZSet().remove(SECKILL_ORDER_DEADLINE_KEY, settled.toArray());
+        cancelledOrders.add(count);
+        if (count > 0) {
+            log.info("取消超时未支付订单：{}", count);
+        }
+        return count + (removed == null ? 0 : removed.intValue());
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("wheelPending", timingWheel.pending());
+        Long queued = stringRedisTemplate.opsForZSet().zCard(SECKILL_ORDER_DEADLINE_KEY);
+        stats.put("deadlines", queued == null ? 0 : queued);
+        stats.put("cancelled", cancelledOrders.sum());
+        return stats;
+    }
+
+}
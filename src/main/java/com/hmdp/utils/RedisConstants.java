@@ -9,13 +9,55 @@ public class RedisConstants {
     public static final Long CACHE_NULL_TTL = 2L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
     public static final Long CACHE_SHOP_TTL = 30L;
+    public static final String CACHE_SHOP_HASH_KEY = "cache:shop:hash:";
+    public static final String CACHE_SHOP_TYPE_IDS_KEY = "cache:shop:ids:";
+    public static final Long CACHE_SHOP_TYPE_IDS_TTL = 10L;
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop:type:";
     public static final Long CACHE_SHOP_TYPE_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_INFO_KEY = "cache:user:info:";
+    public static final long CACHE_USER_INFO_TTL = 30L;
+    public static final String CACHE_VOUCHER_SHOP_KEY = "cache:voucher:shop:";
+    public static final long CACHE_VOUCHER_SHOP_TTL = 5L;
+    public static final Long CACHE_SHOP_LOCAL_TTL = 60L;
+    public static final Long CACHE_SHOP_LOCAL_SIZE = 1000L;
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_BLOOM_ADD_CHANNEL = "cache:bloom:add";
+    public static final Double CACHE_BLOOM_FPP = 0.01;
+    public static final String CACHE_REBUILD_CHANNEL = "cache:rebuilt";
+    public static final int CACHE_REBUILD_RETRY = 3;
+    public static final Long CACHE_REBUILD_WAIT_MILLIS = 200L;
+    public static final Long CACHE_REBUILD_AWAIT_MILLIS = 1000L;
+    public static final Double CACHE_XFETCH_BETA = 1.0;
+    public static final Long CACHE_HOT_LOCAL_TTL = 5L;
+    public static final Long CACHE_DOUBLE_DELETE_DELAY_MILLIS = 500L;
+    public static final Long CACHE_OUTBOX_RETRY_SECONDS = 30L;
+    public static final int CACHE_OUTBOX_BATCH_SIZE = 100;
+
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String ID_WORKER_LAST_KEY = "id:worker:last:";
+    public static final Long ID_WORKER_TTL = 30L;
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_CACHE_KEY = "lock:";
+    public static final String LOCK_UNLOCK_CHANNEL = "lock:unlocked";
+    public static final long LOCK_WATCHDOG_LEASE_MILLIS = 30000L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DEADLINE_KEY = "seckill:order:deadline";
+    public static final String SECKILL_ORDER_FAIL_KEY = "seckill:order:fail:";
+    public static final Long SECKILL_ORDER_FAIL_TTL = 24L;
+    public static final String SECKILL_STATE_CHANNEL = "seckill:state";
+    public static final String SECKILL_LIMIT_KEY = "seckill:limit:";
+    public static final String SECKILL_IDEMPOTENCY_KEY = "seckill:idem:";
+    public static final Long SECKILL_IDEMPOTENCY_TTL = 5L;
+    public static final Long SECKILL_IDEMPOTENCY_PENDING_TTL = 10L;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -1,42 +1,203 @@
 package com.hmdp.utils;
 
-import lombok.RequiredArgsConstructor;
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * 全局唯一id：31位时间戳（秒） + 32位序列号，序列号每天从1开始；
+ * 序列号最高位固定为0，留给SnowflakeIdWorker区分两种方式生成的id，每天最多2^31-1个
+ * 号段模式下每个节点用一次INCRBY预留一段序列号，在本地原子自增分配，
+ * 用掉一定比例后异步预取下一段，跨天时丢弃前一天的号段
  */
+@Slf4j
 @Component
-@RequiredArgsConstructor
-public class RedisIdWorker {
+public class RedisIdWorker implements IdWorker {
 
     /**
      * 开始时间戳（此处对应2023-1-1 00:00:00）
      */
-    private static final long BEGIN_TIMESTAMP = 1672531200L;
+    static final long BEGIN_TIMESTAMP = 1672531200L;
     /**
      * 序列号的位数
      */
-    private static final int COUNT_BITS = 32;
+    static final int COUNT_BITS = 32;
+    /**
+     * 每天的最大序列号，最高位留给SnowflakeIdWorker
+     */
+    private static final long MAX_COUNT = (1L << (COUNT_BITS - 1)) - 1;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
 
     private final StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 号段大小，0代表每个id自增一次
+     */
+    private final long segmentSize;
+
+    /**
+     * 号段剩余多少比例时预取下一段
+     */
+    private final double prefetchRatio;
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService prefetchExecutor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("id-segment-", true));
+
+    /**
+     * 最近一次格式化的日期，同一天内不再重复格式化
+     */
+    private volatile FormattedDate today = new FormattedDate(LocalDate.now());
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment-size:0}") long segmentSize,
+                         @Value("${hmdp.id.prefetch-ratio:0.2}") double prefetchRatio) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentSize = segmentSize;
+        this.prefetchRatio = prefetchRatio;
+    }
+
+    @Override
     public long nextId(String keyPrefix) {
         //1.生成时间戳
-        long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        LocalDateTime now = LocalDateTime.now();
+        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
         //2.生成序列号
         //2.1获取当前日期，精确到天
-        String date = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        //2.2自增长
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        String date = date(now.toLocalDate());
+        //2.2自增长，号段模式从本地号段中分配
+        long count = segmentSize > 0
+                ? nextCount(keyPrefix, date)
+                : increment(keyPrefix, date, 1);
+        if (count > MAX_COUNT) {
+            throw new IllegalStateException("当天序列号已用完，keyPrefix：" + keyPrefix);
+        }
         //3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    private String date(LocalDate date) {
+        FormattedDate formatted = today;
+        if (!formatted.date.equals(date)) {
+            formatted = new FormattedDate(date);
+            today = formatted;
+        }
+        return formatted.value;
+    }
+
+    private long increment(String keyPrefix, String date, long delta) {
+        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, delta);
+        if (count == null) {
+            throw new IllegalStateException("生成序列号失败，keyPrefix：" + keyPrefix);
+        }
+        return count;
+    }
+
+    private long nextCount(String keyPrefix, String date) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, k -> new SegmentBuffer());
+        while (true) {
+            //1.从当前号段分配，号段属于其他日期时不能使用，否则会与当天的序列号重复
+            Segment segment = buffer.current;
+            if (segment != null && segment.date.equals(date)) {
+                long count = segment.cursor.getAndIncrement();
+                if (count <= segment.end) {
+                    //1.1.到达低水位的线程负责预取下一段
+                    if (count == segment.prefetchAt) {
+                        prefetch(buffer, keyPrefix, date);
+                    }
+                    return count;
+                }
+            }
+            //2.号段用完或跨天，切换到下一段，同一时间只有一个线程切换
+            synchronized (buffer) {
+                if (buffer.current == segment) {
+                    buffer.current = takeNext(buffer, keyPrefix, date);
+                }
+            }
+        }
+    }
+
+    private void prefetch(SegmentBuffer buffer, String keyPrefix, String date) {
+        synchronized (buffer) {
+            if (buffer.next == null) {
+                buffer.next = CompletableFuture.supplyAsync(() -> allocate(keyPrefix, date), prefetchExecutor);
+            }
+        }
+    }
+
+    /**
+     * 优先使用预取的号段，没有预取、预取失败或日期不同时同步申请
+     */
+    private Segment takeNext(SegmentBuffer buffer, String keyPrefix, String date) {
+        CompletableFuture<Segment> next = buffer.next;
+        buffer.next = null;
+        if (next != null) {
+            try {
+                Segment segment = next.join();
+                if (segment.date.equals(date)) {
+                    return segment;
+                }
+            } catch (Exception e) {
+                log.warn("预取号段失败，keyPrefix：{}", keyPrefix, e);
+            }
+        }
+        return allocate(keyPrefix, date);
+    }
+
+    private Segment allocate(String keyPrefix, String date) {
+        long end = increment(keyPrefix, date, segmentSize);
+        long start = end - segmentSize + 1;
+        long prefetchAt = end - (long) (segmentSize * prefetchRatio);
+        return new Segment(date, start, end, Math.max(prefetchAt, start));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private static class FormattedDate {
+        private final LocalDate date;
+        private final String value;
+
+        FormattedDate(LocalDate date) {
+            this.date = date;
+            this.value = date.format(DATE_FORMATTER);
+        }
+    }
+
+    private static class Segment {
+        private final String date;
+        private final AtomicLong cursor;
+        private final long end;
+        private final long prefetchAt;
+
+        Segment(String date, long start, long end, long prefetchAt) {
+            this.date = date;
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+
+    private static class SegmentBuffer {
+        private volatile Segment current;
+        private CompletableFuture<Segment> next;
+    }
 }
@@ -0,0 +1,213 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_UNLOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_WATCHDOG_LEASE_MILLIS;
+
+/**
+ * 可重入分布式锁的工厂，负责加解锁脚本、看门狗续期和解锁通知
+ * 锁对象可以每次请求新建，同一线程的重入次数记录在redis中
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisLockFactory implements MessageListener {
+
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
+    static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("lock.lua"));
+        LOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lock_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 本节点的标识，加上线程id作为锁的持有者
+     */
+    private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 等待解锁通知的线程，每个锁一个信号量
+     */
+    private final Map<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点持有的需要续期的锁
+     */
+    private final Map<String, Renewal> renewals = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("lock-watchdog-", true));
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(LOCK_UNLOCK_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    public RedisReentrantLock getLock(String name) {
+        return new RedisReentrantLock(name, this);
+    }
+
+    String currentOwner() {
+        return ID_PREFIX + Thread.currentThread().getId();
+    }
+
+    /**
+     * 尝试加锁
+     * @return 0代表成功，否则为锁的剩余有效期，毫秒
+     */
+    long acquire(String key, String owner, long leaseMillis) {
+        Long ttl = stringRedisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(key),
+                owner, String.valueOf(leaseMillis));
+        return ttl == null ? leaseMillis : ttl;
+    }
+
+    /**
+     * 解锁
+     * @return -1代表不是自己持有的锁，0代表重入次数减一，1代表已释放
+     */
+    long release(String key, String owner) {
+        Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT, Arrays.asList(key, LOCK_UNLOCK_CHANNEL), owner);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * 加锁成功后登记续期，每1/3有效期续期一次；已在续期时不重复登记，
+     * 一直续期到锁完全释放，包括外层或内层是指定有效期的重入持有
+     */
+    void startRenewal(String key, String owner) {
+        renewals.compute(key, (k, renewal) -> {
+            if (renewal != null && renewal.owner.equals(owner)) {
+                return renewal;
+            }
+            if (renewal != null) {
+                renewal.future.cancel(false);
+            }
+            long period = LOCK_WATCHDOG_LEASE_MILLIS / 3;
+            ScheduledFuture<?> future = watchdog.scheduleAtFixedRate(
+                    () -> renew(key, owner), period, period, TimeUnit.MILLISECONDS);
+            return new Renewal(owner, future);
+        });
+    }
+
+    /**
+     * 锁完全释放后停止续期
+     */
+    void stopRenewal(String key, String owner) {
+        renewals.computeIfPresent(key, (k, renewal) -> {
+            if (!renewal.owner.equals(owner)) {
+                return renewal;
+            }
+            renewal.future.cancel(false);
+            return null;
+        });
+    }
+
+    private void renew(String key, String owner) {
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                    owner, String.valueOf(LOCK_WATCHDOG_LEASE_MILLIS));
+            if (renewed == null || renewed == 0) {
+                // 锁已经不属于自己，停止续期
+                log.warn("锁续期失败，锁已释放或过期：{}", key);
+                Renewal renewal = renewals.get(key);
+                if (renewal != null && renewal.owner.equals(owner)) {
+                    renewals.remove(key, renewal);
+                    renewal.future.cancel(false);
+                }
+            }
+        } catch (Exception e) {
+            // redis暂时不可用，下次继续续期
+            log.error("锁续期异常：{}", key, e);
+        }
+    }
+
+    /**
+     * 登记等待，必须在再次尝试加锁之前调用，避免错过通知
+     */
+    Semaphore subscribe(String key) {
+        return waiters.compute(key, (k, w) -> {
+            if (w == null) {
+                w = new Waiters();
+            }
+            w.count++;
+            return w;
+        }).semaphore;
+    }
+
+    void unsubscribe(String key) {
+        waiters.computeIfPresent(key, (k, w) -> --w.count > 0 ? w : null);
+    }
+
+    /**
+     * 收到解锁通知，只唤醒一个等待者，没抢到的等待者在锁的剩余有效期后再尝试
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Waiters w = waiters.get(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (w != null) {
+            w.semaphore.release();
+        }
+    }
+
+    private static class Waiters {
+        private final Semaphore semaphore = new Semaphore(0);
+        private int count;
+    }
+
+    private static class Renewal {
+        private final String owner;
+        private final ScheduledFuture<?> future;
+
+        Renewal(String owner, ScheduledFuture<?> future) {
+            this.owner = owner;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_WATCHDOG_LEASE_MILLIS;
+
+/**
+ * 可重入的分布式锁
+ * 加锁、解锁由lua脚本原子完成，同一线程可以重复加锁；
+ * 等待加锁时订阅解锁通知，不需要轮询；不指定有效期时由看门狗定期续期，持有者宕机后锁在短时间内过期
+ */
+public class RedisReentrantLock implements ILock {
+
+    private static final String KEY_PREFIX = "lock:";
+
+    private final String key;
+    private final RedisLockFactory factory;
+
+    RedisReentrantLock(String name, RedisLockFactory factory) {
+        this.key = KEY_PREFIX + name;
+        this.factory = factory;
+    }
+
+    /**
+     * 尝试一次加锁，获取失败立即返回，锁在timeoutSec后过期，不续期
+     * 重入时不会缩短外层持有的有效期，外层由看门狗续期时继续续期
+     */
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        return factory.acquire(key, factory.currentOwner(), TimeUnit.SECONDS.toMillis(timeoutSec)) == 0;
+    }
+
+    /**
+     * 尝试加锁，锁被占用时最多等待waitTime，持有期间由看门狗续期
+     * @return true代表获取锁成功; false代表等待超时
+     */
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        String owner = factory.currentOwner();
+        // 1.尝试加锁
+        long ttl = factory.acquire(key, owner, LOCK_WATCHDOG_LEASE_MILLIS);
+        if (ttl == 0) {
+            factory.startRenewal(key, owner);
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        if (waitTime <= 0) {
+            return false;
+        }
+        // 2.订阅解锁通知后再次尝试，直到成功或超时
+        Semaphore semaphore = factory.subscribe(key);
+        try {
+            while (true) {
+                ttl = factory.acquire(key, owner, LOCK_WATCHDOG_LEASE_MILLIS);
+                if (ttl == 0) {
+                    factory.startRenewal(key, owner);
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                // 3.等待解锁通知，最多等到锁过期
+                semaphore.tryAcquire(Math.min(TimeUnit.MILLISECONDS.toNanos(ttl), remaining), TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            factory.unsubscribe(key);
+        }
+    }
+
+    @Override
+    public void unlock() {
+        String owner = factory.currentOwner();
+        // 只有完全释放时才停止续期，内层解锁不影响外层持有
+        if (factory.release(key, owner) == 1) {
+            factory.stopRenewal(key, owner);
+        }
+    }
+}
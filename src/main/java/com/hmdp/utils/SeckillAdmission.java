@@ -0,0 +1,177 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_KEY;
+
+/**
+ * 秒杀准入控制
+ * 请求先经过本节点每张券一个的令牌桶，再经过redis中全局的滑动窗口限流，超出的请求直接拒绝，不占用后续的redis和数据库；
+ * 两级的限额都按剩余库存计算：每个窗口最多放行 剩余库存×倍数 个请求，库存越少放行越少
+ */
+@Slf4j
+@Component
+public class SeckillAdmission {
+
+    private static final DefaultRedisScript<Long> SLIDING_WINDOW_SCRIPT;
+    static {
+        SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>();
+        SLIDING_WINDOW_SCRIPT.setLocation(new ClassPathResource("sliding_window.lua"));
+        SLIDING_WINDOW_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillStockBuckets seckillStockBuckets;
+
+    @Value("${hmdp.seckill.admission.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 本节点每张券每秒最多放行的请求数
+     */
+    @Value("${hmdp.seckill.admission.local-rate:2000}")
+    private long localRate;
+
+    /**
+     * 全局滑动窗口大小，毫秒
+     */
+    @Value("${hmdp.seckill.admission.window:1000}")
+    private long window;
+
+    /**
+     * 每个窗口放行的请求数是剩余库存的多少倍
+     */
+    @Value("${hmdp.seckill.admission.stock-factor:2.0}")
+    private double stockFactor;
+
+    /**
+     * 每个窗口至少放行的请求数，其他节点租借的库存不计入剩余库存，避免误判为0
+     */
+    @Value("${hmdp.seckill.admission.min-limit:50}")
+    private long minLimit;
+
+    /**
+     * 剩余库存的刷新间隔，毫秒
+     */
+    @Value("${hmdp.seckill.admission.stock-refresh-interval:200}")
+    private long stockRefreshMillis;
+
+    /**
+     * 每张券一个令牌桶，券id来自请求路径，数量需要有上限
+     */
+    private final Cache<Long, TokenBucket> buckets = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder localRejected = new LongAdder();
+    private final LongAdder globalRejected = new LongAdder();
+
+    /**
+     * 判断是否放行
+     * @return true代表放行; false代表超出限流，应当直接拒绝
+     */
+    public boolean tryAdmit(Long voucherId) {
+        if (!enabled) {
+            return true;
+        }
+        TokenBucket bucket = buckets.get(voucherId, TokenBucket::new);
+        long now = System.currentTimeMillis();
+        long limit = bucket.limit(now);
+        //1. 本地令牌桶，每秒的速率不超过全局限额
+        if (!bucket.tryAcquire(Math.min(localRate, limit * 1000 / window))) {
+            localRejected.increment();
+            return false;
+        }
+        //2. 全局滑动窗口
+        if (!tryAcquireGlobal(voucherId, now, limit)) {
+            globalRejected.increment();
+            return false;
+        }
+        admitted.increment();
+        return true;
+    }
+
+    private boolean tryAcquireGlobal(Long voucherId, long now, long limit) {
+        try {
+            long current = now / window;
+            String key = SECKILL_LIMIT_KEY + voucherId + ":";
+            Long result = stringRedisTemplate.execute(SLIDING_WINDOW_SCRIPT,
+                    Arrays.asList(key + current, key + (current - 1)),
+                    String.valueOf((double) (now % window) / window), String.valueOf(limit), String.valueOf(window));
+            return result == null || result == 1;
+        } catch (Exception e) {
+            // redis不可用时只依靠本地令牌桶限流，后续的秒杀脚本会再次失败
+            log.warn("全局限流异常，voucherId：{}", voucherId, e);
+            return true;
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("admitted", admitted.sum());
+        stats.put("localRejected", localRejected.sum());
+        stats.put("globalRejected", globalRejected.sum());
+        return stats;
+    }
+
+    private class TokenBucket {
+        private final Long voucherId;
+        private double tokens = Double.MAX_VALUE;
+        private long lastRefillNanos = System.nanoTime();
+        private volatile long limit = minLimit;
+        private volatile long limitRefreshAt;
+
+        TokenBucket(Long voucherId) {
+            this.voucherId = voucherId;
+        }
+
+        /**
+         * 每个窗口的全局限额，按剩余库存定期刷新
+         */
+        long limit(long now) {
+            if (now >= limitRefreshAt) {
+                limitRefreshAt = now + stockRefreshMillis;
+                try {
+                    long stock = seckillStockBuckets.remainingStock(voucherId);
+                    limit = Math.max(minLimit, (long) Math.ceil(stock * stockFactor));
+                } catch (Exception e) {
+                    log.warn("查询剩余库存异常，voucherId：{}", voucherId, e);
+                    limit = Math.max(limit, minLimit);
+                }
+            }
+            return limit;
+        }
+
+        /**
+         * 按速率补充令牌，桶容量为一秒的令牌数，新建的桶是满的
+         */
+        synchronized boolean tryAcquire(long rate) {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (double) (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
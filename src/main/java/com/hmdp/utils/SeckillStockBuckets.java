@@ -0,0 +1,275 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.net.NetUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+
+/**
+ * 秒杀库存分段
+ * 库存较多的秒杀券把库存拆分到N个分段key中，每个节点从分段中租借一批库存放到本地计数器，
+ * 大部分请求在内存中扣减库存，本地库存用完时先从自己的分段租借，再依次从其他分段借；
+ * 长时间未使用的库存和停机时剩余的库存归还到分段中
+ */
+@Slf4j
+@Component
+public class SeckillStockBuckets {
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("stock_lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 所有分段都借不到库存后，这段时间内直接判定库存不足
+     */
+    private static final long SOLD_OUT_RECHECK_MILLIS = 500;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillVoucherStates seckillVoucherStates;
+    private final int segments;
+    private final int minStock;
+    private final int leaseBatch;
+    private final long leaseIdleMillis;
+    /**
+     * 本节点优先租借的分段
+     */
+    private final int homeSegment;
+
+    private final Map<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public SeckillStockBuckets(StringRedisTemplate stringRedisTemplate,
+                               SeckillVoucherStates seckillVoucherStates,
+                               @Value("${hmdp.seckill.stock-segments:8}") int segments,
+                               @Value("${hmdp.seckill.segment-min-stock:1000}") int minStock,
+                               @Value("${hmdp.seckill.lease-batch:50}") int leaseBatch,
+                               @Value("${hmdp.seckill.lease-idle-timeout:10000}") long leaseIdleMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherStates = seckillVoucherStates;
+        this.segments = segments;
+        this.minStock = minStock;
+        this.leaseBatch = leaseBatch;
+        this.leaseIdleMillis = leaseIdleMillis;
+        this.homeSegment = segments <= 0 ? 0 : Math.floorMod(NetUtil.getLocalHostName().hashCode(), segments);
+    }
+
+    /**
+     * 按库存决定分段数，0代表不分段
+     */
+    public int segmentsFor(int stock) {
+        return segments > 0 && stock >= minStock ? segments : 0;
+    }
+
+    public static String segmentKey(Long voucherId, int segment) {
+        return SECKILL_STOCK_KEY + voucherId + ":" + segment;
+    }
+
+    /**
+     * 是否为分段库存模式，每张券只在第一次使用时查询一次redis
+     */
+    public boolean isSegmented(Long voucherId) {
+        return bucket(voucherId).segments > 0;
+    }
+
+    /**
+     * 从本地库存中扣减一个，本地不足时从分段租借
+     */
+    public boolean tryAcquire(Long voucherId) {
+        Bucket bucket = bucket(voucherId);
+        bucket.lastUsed = System.currentTimeMillis();
+        while (true) {
+            //1. 本地库存充足，CAS扣减
+            int tokens = bucket.tokens.get();
+            if (tokens > 0) {
+                if (bucket.tokens.compareAndSet(tokens, tokens - 1)) {
+                    return true;
+                }
+                continue;
+            }
+            //2. 刚确认过所有分段都没有库存
+            if (System.currentTimeMillis() < bucket.soldOutUntil) {
+                return false;
+            }
+            //3. 租借库存，同一张券同时只有一个线程租借
+            synchronized (bucket) {
+                if (bucket.tokens.get() > 0) {
+                    continue;
+                }
+                int leased = lease(bucket);
+                if (leased == 0) {
+                    bucket.soldOutUntil = System.currentTimeMillis() + SOLD_OUT_RECHECK_MILLIS;
+                    return false;
+                }
+                bucket.tokens.addAndGet(leased);
+            }
+        }
+    }
+
+    /**
+     * 扣减了库存但没有下单成功（例如重复下单），放回本地库存
+     */
+    public void release(Long voucherId) {
+        bucket(voucherId).tokens.incrementAndGet();
+    }
+
+    /**
+     * 归还库存到redis，分段模式归还到本节点的分段，否则归还到库存key
+     * 归还后清除各节点的售罄状态
+     */
+    public void returnStock(Long voucherId, int count) {
+        stringRedisTemplate.opsForValue().increment(returnKey(voucherId), count);
+        stockReturned(voucherId);
+    }
+
+    /**
+     * 归还库存的key，分段模式为本节点的分段，否则为库存key
+     */
+    public String returnKey(Long voucherId) {
+        Bucket bucket = bucket(voucherId);
+        return bucket.segments > 0
+                ? segmentKey(voucherId, homeSegment % bucket.segments)
+                : SECKILL_STOCK_KEY + voucherId;
+    }
+
+    /**
+     * 库存已经归还到returnKey（例如由脚本归还），清除售罄状态
+     */
+    public void stockReturned(Long voucherId) {
+        bucket(voucherId).soldOutUntil = 0;
+        seckillVoucherStates.clear(voucherId);
+    }
+
+    /**
+     * 数据库已经没有库存时，把redis中的库存校正为0并丢弃本节点租借的库存，标记售罄并通知所有节点
+     * 其他节点已租借的库存不再放行（售罄状态先于本地库存判断）；与此同时归还的少量库存可能被清零，只会少卖不会超卖
+     */
+    public void drain(Long voucherId) {
+        Bucket bucket = bucket(voucherId);
+        bucket.tokens.set(0);
+        Map<String, String> zeros = new HashMap<>();
+        if (bucket.segments == 0) {
+            zeros.put(SECKILL_STOCK_KEY + voucherId, "0");
+        }
+        for (int i = 0; i < bucket.segments; i++) {
+            zeros.put(segmentKey(voucherId, i), "0");
+        }
+        stringRedisTemplate.opsForValue().multiSet(zeros);
+        seckillVoucherStates.mark(voucherId, SeckillVoucherStates.SOLD_OUT);
+        log.warn("数据库库存不足，redis库存已清零，voucherId：{}", voucherId);
+    }
+
+    /**
+     * 剩余的库存：redis中的库存加上本节点租借到本地的库存，其他节点租借的库存不计入
+     */
+    public long remainingStock(Long voucherId) {
+        Bucket bucket = bucket(voucherId);
+        List<String> keys = new ArrayList<>(Math.max(bucket.segments, 1));
+        if (bucket.segments == 0) {
+            keys.add(SECKILL_STOCK_KEY + voucherId);
+        }
+        for (int i = 0; i < bucket.segments; i++) {
+            keys.add(segmentKey(voucherId, i));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        long stock = bucket.tokens.get();
+        if (values != null) {
+            for (String value : values) {
+                stock += value == null ? 0 : Long.parseLong(value);
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * 从本节点的分段开始依次尝试租借
+     */
+    private int lease(Bucket bucket) {
+        for (int i = 0; i < bucket.segments; i++) {
+            int segment = (homeSegment + i) % bucket.segments;
+            Long leased = stringRedisTemplate.execute(LEASE_SCRIPT,
+                    Collections.singletonList(segmentKey(bucket.voucherId, segment)), String.valueOf(leaseBatch));
+            if (leased != null && leased > 0) {
+                if (i > 0) {
+                    log.debug("从其他分段租借库存，voucherId：{}，segment：{}，数量：{}", bucket.voucherId, segment, leased);
+                }
+                return leased.intValue();
+            }
+        }
+        return 0;
+    }
+
+    private Bucket bucket(Long voucherId) {
+        Bucket bucket = buckets.get(voucherId);
+        if (bucket != null) {
+            return bucket;
+        }
+        Object value = stringRedisTemplate.opsForHash().get(SECKILL_VOUCHER_KEY + voucherId, "segments");
+        if (value == null) {
+            // 秒杀信息尚未加载，不缓存，加载后再确定模式
+            return new Bucket(voucherId, 0);
+        }
+        int voucherSegments = Integer.parseInt(value.toString());
+        return buckets.computeIfAbsent(voucherId, id -> new Bucket(id, voucherSegments));
+    }
+
+    /**
+     * 归还长时间未使用的库存，让其他节点可以借到
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.lease-idle-timeout:10000}")
+    public void returnIdleLeases() {
+        long deadline = System.currentTimeMillis() - leaseIdleMillis;
+        buckets.values().forEach(bucket -> {
+            if (bucket.segments > 0 && bucket.lastUsed < deadline) {
+                returnLeased(bucket);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void returnAllLeases() {
+        buckets.values().forEach(bucket -> {
+            if (bucket.segments > 0) {
+                returnLeased(bucket);
+            }
+        });
+    }
+
+    private void returnLeased(Bucket bucket) {
+        int tokens = bucket.tokens.getAndSet(0);
+        if (tokens > 0) {
+            returnStock(bucket.voucherId, tokens);
+            log.debug("归还租借的库存，voucherId：{}，数量：{}", bucket.voucherId, tokens);
+        }
+    }
+
+    private static class Bucket {
+        private final Long voucherId;
+        private final int segments;
+        private final AtomicInteger tokens = new AtomicInteger();
+        private volatile long lastUsed;
+        private volatile long soldOutUntil;
+
+        Bucket(Long voucherId, int segments) {
+            this.voucherId = voucherId;
+            this.segments = segments;
+        }
+    }
+}
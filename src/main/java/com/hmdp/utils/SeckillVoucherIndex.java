@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀券时间索引
+ * 在内存中保存进行中和即将开始的秒杀券的开始、结束时间，秒杀请求只做内存比较；
+ * 索引是不可变的Map，刷新时整体替换，读请求不加锁。
+ * 开始前一段时间把库存和秒杀时间预热到redis，保证活动开始时redis中已有数据
+ */
+@Slf4j
+@Component
+public class SeckillVoucherIndex {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    /**
+     * 提前多久预热，单位毫秒
+     */
+    @Value("${hmdp.seckill.preheat-lead-time:300000}")
+    private long preheatLeadMillis;
+
+    private volatile Map<Long, Window> windows = Collections.emptyMap();
+
+    /**
+     * 已经预热过的券
+     */
+    private final Set<Long> preheated = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 判断秒杀时间
+     * @return 与秒杀脚本的返回值一致：AVAILABLE代表已开始或不在索引中，需要继续判断；NOT_STARTED；ENDED
+     */
+    public int check(Long voucherId, long now) {
+        Window window = windows.get(voucherId);
+        if (window == null) {
+            return SeckillVoucherStates.AVAILABLE;
+        }
+        if (now < window.begin) {
+            return SeckillVoucherStates.NOT_STARTED;
+        }
+        if (now > window.end) {
+            return SeckillVoucherStates.ENDED;
+        }
+        return SeckillVoucherStates.AVAILABLE;
+    }
+
+    /**
+     * 新增或修改秒杀券后更新索引，复制一份再替换
+     */
+    public synchronized void put(SeckillVoucher voucher) {
+        Map<Long, Window> copy = new HashMap<>(windows);
+        copy.put(voucher.getVoucherId(), new Window(toMillis(voucher.getBeginTime()), toMillis(voucher.getEndTime())));
+        windows = Collections.unmodifiableMap(copy);
+        // 时间可能变化，需要重新预热
+        preheated.remove(voucher.getVoucherId());
+    }
+
+    /**
+     * 从数据库重新加载尚未结束的秒杀券
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.index-refresh-interval:60000}")
+    public synchronized void refresh() {
+        List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                .select("voucher_id", "begin_time", "end_time")
+                .gt("end_time", LocalDateTime.now())
+                .list();
+        Map<Long, Window> index = new HashMap<>(vouchers.size() * 2);
+        for (SeckillVoucher voucher : vouchers) {
+            index.put(voucher.getVoucherId(), new Window(toMillis(voucher.getBeginTime()), toMillis(voucher.getEndTime())));
+        }
+        windows = Collections.unmodifiableMap(index);
+        // 已结束的券不再需要记录
+        preheated.retainAll(index.keySet());
+        log.debug("秒杀券索引已刷新，数量：{}", index.size());
+    }
+
+    /**
+     * 把即将开始的券的库存和秒杀时间写入redis，redis中已有的库存不覆盖
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.preheat-interval:10000}")
+    public void preheat() {
+        long now = System.currentTimeMillis();
+        List<Long> ids = new ArrayList<>();
+        windows.forEach((voucherId, window) -> {
+            if (window.begin - preheatLeadMillis <= now && now <= window.end && !preheated.contains(voucherId)) {
+                ids.add(voucherId);
+            }
+        });
+        if (ids.isEmpty()) {
+            return;
+        }
+        // 重新从数据库读取库存，redis中已有库存的券只补齐秒杀时间
+        seckillVoucherService.loadToRedis(seckillVoucherService.listByIds(ids), false);
+        preheated.addAll(ids);
+        log.info("秒杀券已预热：{}", ids);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static class Window {
+        private final long begin;
+        private final long end;
+
+        Window(long begin, long end) {
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+}
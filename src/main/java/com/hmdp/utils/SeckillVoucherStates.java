@@ -0,0 +1,178 @@
+package com.hmdp.utils;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀券状态表：已售罄、未开始、已结束
+ * 每个节点在内存中保存，秒杀请求先查这里，命中时直接拒绝，不再访问redis和数据库；
+ * 状态变化通过redis发布订阅通知所有节点，另有定时任务对照redis校正
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SeckillVoucherStates implements MessageListener {
+
+    /**
+     * 状态码与秒杀脚本的返回值一致
+     */
+    public static final int AVAILABLE = 0;
+    public static final int SOLD_OUT = 1;
+    public static final int NOT_STARTED = 3;
+    public static final int ENDED = 4;
+
+    /**
+     * 秒杀脚本返回值对应的提示信息
+     */
+    public static String failMessage(int result) {
+        switch (result) {
+            case 1:
+                return "库存不足！";
+            case 2:
+                return "不能重复下单！";
+            case 3:
+                return "秒杀活动尚未开始！";
+            case 4:
+                return "秒杀活动已结束！";
+            default:
+                return "秒杀活动不存在！";
+        }
+    }
+
+    /**
+     * 未开始的状态只在本节点保存一小段时间，到期后重新判断
+     */
+    private static final long NOT_STARTED_TTL_MILLIS = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Map<Long, State> states = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(SECKILL_STATE_CHANNEL));
+    }
+
+    /**
+     * 查询秒杀券状态，只有内存操作
+     * @return AVAILABLE代表需要继续判断，其他值代表应当直接拒绝
+     */
+    public int check(Long voucherId) {
+        State state = states.get(voucherId);
+        if (state == null) {
+            return AVAILABLE;
+        }
+        if (state.expireAt < System.currentTimeMillis()) {
+            states.remove(voucherId, state);
+            return AVAILABLE;
+        }
+        return state.code;
+    }
+
+    /**
+     * 记录秒杀脚本返回的状态，售罄和结束通知所有节点
+     */
+    public void mark(Long voucherId, int code) {
+        switch (code) {
+            case SOLD_OUT:
+            case ENDED:
+                State current = states.get(voucherId);
+                if (current != null && current.code == code) {
+                    // 已经广播过
+                    return;
+                }
+                states.put(voucherId, new State(code, Long.MAX_VALUE));
+                stringRedisTemplate.convertAndSend(SECKILL_STATE_CHANNEL, voucherId + ":" + code);
+                log.info("秒杀券状态变更，voucherId：{}，状态：{}", voucherId, code);
+                break;
+            case NOT_STARTED:
+                states.put(voucherId, new State(code, System.currentTimeMillis() + NOT_STARTED_TTL_MILLIS));
+                break;
+            default:
+        }
+    }
+
+    /**
+     * 库存归还或秒杀时间变化后清除状态，通知所有节点
+     */
+    public void clear(Long voucherId) {
+        // 其他节点可能记录了状态，即使本节点没有也要通知
+        states.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_STATE_CHANNEL, voucherId + ":" + AVAILABLE);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(':');
+        Long voucherId = Long.valueOf(body.substring(0, index));
+        int code = Integer.parseInt(body.substring(index + 1));
+        if (code == AVAILABLE) {
+            states.remove(voucherId);
+        } else {
+            states.put(voucherId, new State(code, Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * 兜底校正：发布订阅消息可能丢失，定期对照redis中的库存和秒杀时间
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.state-reconcile-interval:5000}")
+    public void reconcile() {
+        long now = System.currentTimeMillis();
+        states.forEach((voucherId, state) -> {
+            if (state.code == SOLD_OUT && stock(voucherId) > 0) {
+                states.remove(voucherId, state);
+                log.info("秒杀券库存已恢复，voucherId：{}", voucherId);
+            } else if (state.code == ENDED) {
+                Object end = stringRedisTemplate.opsForHash().get(SECKILL_VOUCHER_KEY + voucherId, "end");
+                if (end != null && Long.parseLong(end.toString()) > now) {
+                    states.remove(voucherId, state);
+                    log.info("秒杀券结束时间已延后，voucherId：{}", voucherId);
+                }
+            }
+        });
+    }
+
+    private long stock(Long voucherId) {
+        Object segments = stringRedisTemplate.opsForHash().get(SECKILL_VOUCHER_KEY + voucherId, "segments");
+        int count = segments == null ? 0 : Integer.parseInt(segments.toString());
+        if (count == 0) {
+            return parse(stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId));
+        }
+        long stock = 0;
+        for (int i = 0; i < count; i++) {
+            stock += parse(stringRedisTemplate.opsForValue().get(SeckillStockBuckets.segmentKey(voucherId, i)));
+        }
+        return stock;
+    }
+
+    private static long parse(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    private static class State {
+        private final int code;
+        private final long expireAt;
+
+        State(int code, long expireAt) {
+            this.code = code;
+            this.expireAt = expireAt;
+        }
+    }
+}
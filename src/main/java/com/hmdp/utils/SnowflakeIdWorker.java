@@ -0,0 +1,230 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.net.NetUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_LAST_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TTL;
+
+/**
+ * 雪花算法id，不依赖redis生成
+ * 高31位与RedisIdWorker相同，是从BEGIN_TIMESTAMP开始的秒数，低32位为 1位标记 + 10位毫秒 + 9位机器id + 12位序列号，
+ * 切换生成方式后新旧id仍然按时间排序。标记位固定为1，RedisIdWorker的序列号最高位固定为0，
+ * 滚动切换hmdp.id.mode期间两种方式同时生成id也不会重复。
+ * 机器id在启动时从redis租用并定期续期，租期内没有续期成功或者机器id被其他节点占用时停止生成id，直到重新租到机器id；
+ * 时钟回拨时沿用上一次的时间继续分配，不会生成更小的id；同一毫秒的序列号用完时等待下一毫秒
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "hmdp.id.mode", havingValue = "snowflake")
+public class SnowflakeIdWorker implements IdWorker {
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("id_worker_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final int MILLIS_BITS = 10;
+    private static final int WORKER_BITS = 9;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_WORKERS = 1 << WORKER_BITS;
+    private static final long MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+    /**
+     * state中机器id的位置，毫秒从BEGIN_TIMESTAMP开始最多41位
+     */
+    private static final int STATE_WORKER_SHIFT = 41 + SEQUENCE_BITS;
+    private static final long STATE_TIME_MASK = (1L << STATE_WORKER_SHIFT) - 1;
+    /**
+     * 序列号部分的最高位，区分雪花算法和RedisIdWorker生成的id
+     */
+    private static final long SNOWFLAKE_FLAG = 1L << (RedisIdWorker.COUNT_BITS - 1);
+
+    /**
+     * 时钟回拨超过这个值时记录警告
+     */
+    private static final long MAX_BACKWARD_MILLIS = 5;
+
+    /**
+     * 提前这么久认为租期已过，避免redis中的机器id过期后其他节点占用时本节点仍在生成id
+     */
+    private static final long LEASE_SAFETY_MILLIS = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String owner = UUID.randomUUID().toString(true);
+
+    /**
+     * RedisIdWorker用本地时间当作UTC计算秒数，这里加上同样的时区偏移
+     */
+    private final long offsetMillis;
+
+    /**
+     * (机器id + 1) << 53 | 上一次分配的毫秒 << 12 | 序列号，毫秒从BEGIN_TIMESTAMP开始
+     * 机器id和时间在同一次CAS中读取和更新，切换机器id时不会把旧的时间和新的机器id拼在一起；机器id部分为0表示没有租到机器id
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 租期截止时间，超过后停止生成id
+     */
+    private volatile long leaseDeadline;
+
+    public SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.offsetMillis = TimeUnit.SECONDS.toMillis(
+                ZoneId.systemDefault().getRules().getOffset(Instant.now()).getTotalSeconds())
+                - TimeUnit.SECONDS.toMillis(RedisIdWorker.BEGIN_TIMESTAMP);
+    }
+
+    @PostConstruct
+    private void init() {
+        leaseWorkerId();
+    }
+
+    /**
+     * 生成id，与业务前缀无关
+     */
+    @Override
+    public long nextId(String keyPrefix) {
+        while (true) {
+            long last = state.get();
+            long worker = last >>> STATE_WORKER_SHIFT;
+            if (worker == 0 || System.currentTimeMillis() >= leaseDeadline) {
+                throw new IllegalStateException("机器id租期已失效，暂停生成id");
+            }
+            long lastTime = last & STATE_TIME_MASK;
+            long lastMillis = lastTime >>> SEQUENCE_BITS;
+            long sequence = lastTime & MAX_SEQUENCE;
+            long now = currentMillis();
+            long next;
+            if (now > lastMillis) {
+                //1.进入新的一毫秒，序列号从0开始
+                next = now << SEQUENCE_BITS;
+            } else if (sequence < MAX_SEQUENCE) {
+                //2.同一毫秒或时钟回拨，沿用上一次的时间，序列号加一
+                next = lastTime + 1;
+            } else if (now < lastMillis) {
+                //3.时钟回拨且序列号用完，借用下一毫秒
+                next = (lastMillis + 1) << SEQUENCE_BITS;
+            } else {
+                //4.序列号用完，等待下一毫秒
+                continue;
+            }
+            if (state.compareAndSet(last, worker << STATE_WORKER_SHIFT | next)) {
+                if (now < lastMillis - MAX_BACKWARD_MILLIS) {
+                    log.warn("时钟回拨{}ms，沿用上一次的时间生成id", lastMillis - now);
+                }
+                return toId(worker - 1, next >>> SEQUENCE_BITS, next & MAX_SEQUENCE);
+            }
+        }
+    }
+
+    private long toId(long workerId, long millis, long sequence) {
+        long seconds = millis / 1000;
+        long millisOfSecond = millis % 1000;
+        return seconds << RedisIdWorker.COUNT_BITS
+                | SNOWFLAKE_FLAG
+                | millisOfSecond << (WORKER_BITS + SEQUENCE_BITS)
+                | workerId << SEQUENCE_BITS
+                | sequence;
+    }
+
+    private long currentMillis() {
+        return System.currentTimeMillis() + offsetMillis;
+    }
+
+    /**
+     * 从主机名的哈希开始依次尝试占用机器id
+     */
+    private void leaseWorkerId() {
+        int start = Math.floorMod(NetUtil.getLocalHostName().hashCode(), MAX_WORKERS);
+        for (int i = 0; i < MAX_WORKERS; i++) {
+            int candidate = (start + i) % MAX_WORKERS;
+            long leasedAt = System.currentTimeMillis();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + candidate, owner, ID_WORKER_TTL, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                useWorkerId(candidate, leasedAt);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有可用的机器id");
+    }
+
+    /**
+     * 上一个使用该机器id的节点可能时钟更快，从它最后生成id的时间之后开始，机器id和时间一起更新
+     */
+    private void useWorkerId(int candidate, long leasedAt) {
+        String last = stringRedisTemplate.opsForValue().get(ID_WORKER_LAST_KEY + candidate);
+        long floor = (last == null ? 1 : Long.parseLong(last) + 1) << SEQUENCE_BITS;
+        leaseDeadline = deadline(leasedAt);
+        state.updateAndGet(current -> (candidate + 1L) << STATE_WORKER_SHIFT
+                | Math.max(current & STATE_TIME_MASK, floor));
+        log.info("租用机器id：{}", candidate);
+    }
+
+    /**
+     * 停止生成id，保留已经分配到的时间，重新租到机器id后不会生成更小的id
+     */
+    private void revokeWorkerId() {
+        leaseDeadline = 0;
+        state.updateAndGet(current -> current & STATE_TIME_MASK);
+    }
+
+    private long deadline(long leasedAt) {
+        return leasedAt + TimeUnit.SECONDS.toMillis(ID_WORKER_TTL) - LEASE_SAFETY_MILLIS;
+    }
+
+    /**
+     * 续期机器id，同时记录最近一次生成id的时间；没有租到机器id时重新租用
+     */
+    @Scheduled(fixedDelayString = "${hmdp.id.worker-heartbeat-interval:10000}")
+    public void heartbeat() {
+        long current = state.get();
+        long worker = (current >>> STATE_WORKER_SHIFT) - 1;
+        try {
+            if (worker < 0) {
+                leaseWorkerId();
+                return;
+            }
+            long renewedAt = System.currentTimeMillis();
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Arrays.asList(ID_WORKER_KEY + worker, ID_WORKER_LAST_KEY + worker),
+                    owner, String.valueOf(TimeUnit.SECONDS.toMillis(ID_WORKER_TTL)),
+                    String.valueOf((current & STATE_TIME_MASK) >>> SEQUENCE_BITS));
+            if (renewed != null && renewed == 1) {
+                leaseDeadline = deadline(renewedAt);
+                return;
+            }
+            // 机器id已被其他节点占用，先停止生成id再换一个
+            log.warn("机器id已被其他节点占用：{}", worker);
+            revokeWorkerId();
+            leaseWorkerId();
+        } catch (Exception e) {
+            log.warn("机器id续期失败：{}", worker, e);
+            if (worker >= 0 && System.currentTimeMillis() >= leaseDeadline) {
+                // 租期内没有续期成功，机器id可能已被其他节点占用，停止生成id
+                log.error("机器id租期已过，停止生成id：{}", worker);
+                revokeWorkerId();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 两级锁：先获取本地锁，再获取redis分布式锁，释放顺序相反
+ * 同一节点上同一个key的并发请求只有一个会访问redis，不同key的本地锁互不影响
+ */
+public class TieredLock implements ILock {
+
+    private final ReentrantLock local;
+    private final RedisReentrantLock remote;
+    private final TieredLockFactory factory;
+
+    TieredLock(ReentrantLock local, RedisReentrantLock remote, TieredLockFactory factory) {
+        this.local = local;
+        this.remote = remote;
+        this.factory = factory;
+    }
+
+    /**
+     * 两级都只尝试一次，分布式锁在timeoutSec后过期，不续期
+     */
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        // 1.本地锁
+        if (!local.tryLock()) {
+            factory.localStats.contended.increment();
+            factory.localStats.record(false, 0);
+            return false;
+        }
+        factory.localStats.record(true, 0);
+        // 2.分布式锁
+        long begin = System.nanoTime();
+        boolean success = remote.tryLock(timeoutSec);
+        factory.remoteStats.record(success, System.nanoTime() - begin);
+        if (!success) {
+            local.unlock();
+        }
+        return success;
+    }
+
+    /**
+     * 最多等待waitTime，两级共用这段时间，分布式锁由看门狗续期
+     */
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        long begin = System.nanoTime();
+        long deadline = begin + unit.toNanos(waitTime);
+        // 1.本地锁，被同节点的其他线程持有时在本地排队
+        boolean success = local.tryLock();
+        if (!success) {
+            factory.localStats.contended.increment();
+            success = local.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        long localAcquired = System.nanoTime();
+        factory.localStats.record(success, localAcquired - begin);
+        if (!success) {
+            return false;
+        }
+        // 2.分布式锁，只有本地锁的持有者才会访问redis
+        try {
+            success = remote.tryLock(Math.max(deadline - localAcquired, 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            local.unlock();
+            throw e;
+        }
+        long waited = System.nanoTime() - localAcquired;
+        factory.remoteStats.record(success, waited);
+        if (!success) {
+            local.unlock();
+        }
+        return success;
+    }
+
+    @Override
+    public void unlock() {
+        try {
+            remote.unlock();
+        } finally {
+            local.unlock();
+        }
+    }
+}
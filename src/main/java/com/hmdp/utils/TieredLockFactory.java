@@ -0,0 +1,77 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 两级锁的工厂：本地锁 + redis分布式锁
+ * 同一节点上的重复请求先在本地锁上排队，只有抢到本地锁的线程才访问redis；
+ * 每个key一把本地锁，不同用户不会因为哈希冲突互相等待；本地锁是弱引用，
+ * 持有或等待锁的线程都引用着它，没有线程使用后才会被回收，内存占用随并发的key数量变化
+ */
+@Component
+@RequiredArgsConstructor
+public class TieredLockFactory {
+
+    private final RedisLockFactory redisLockFactory;
+
+    private final Cache<Object, ReentrantLock> localLocks = Caffeine.newBuilder().weakValues().build();
+
+    final TierStats localStats = new TierStats();
+    final TierStats remoteStats = new TierStats();
+
+    /**
+     * @param name 分布式锁的名称
+     * @param localKey 本地锁的key，例如userId
+     */
+    public TieredLock getLock(String name, Object localKey) {
+        return new TieredLock(localLocks.get(localKey, key -> new ReentrantLock()), redisLockFactory.getLock(name), this);
+    }
+
+    /**
+     * 两级锁各自的加锁次数、失败次数和平均等待时间，本地锁另外统计需要排队的次数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("local", localStats.snapshot());
+        stats.put("remote", remoteStats.snapshot());
+        stats.put("localLocks", localLocks.estimatedSize());
+        return stats;
+    }
+
+    static class TierStats {
+        final LongAdder acquired = new LongAdder();
+        final LongAdder contended = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+
+        void record(boolean success, long waitedNanos) {
+            if (success) {
+                acquired.increment();
+            } else {
+                failed.increment();
+            }
+            waitNanos.add(waitedNanos);
+        }
+
+        Map<String, Long> snapshot() {
+            Map<String, Long> snapshot = new LinkedHashMap<>();
+            long acquiredCount = acquired.sum();
+            long failedCount = failed.sum();
+            snapshot.put("acquired", acquiredCount);
+            snapshot.put("contended", contended.sum());
+            snapshot.put("failed", failedCount);
+            long total = acquiredCount + failedCount;
+            snapshot.put("avgWaitMicros", total == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / total));
+            return snapshot;
+        }
+    }
+}
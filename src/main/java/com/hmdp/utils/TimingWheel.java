@@ -0,0 +1,169 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮，保存long类型的id和到期时间
+ * 添加为O(1)，每个槽位用两个long数组保存id和到期的tick，每个任务只占16字节，可以容纳数百万个到期时间；
+ * 只有一个工作线程，每个tick把当前槽位中到期的id一次性交给回调，超过一圈的id留在槽位中等下一圈
+ */
+@Slf4j
+public class TimingWheel {
+
+    private final long tickMillis;
+    private final int mask;
+    private final Slot[] slots;
+    private final Consumer<long[]> expiredHandler;
+    private final Thread worker;
+
+    private final long startMillis;
+    private volatile long currentTick = -1;
+    private volatile boolean running = true;
+
+    /**
+     * @param tickMillis 每个tick的时长
+     * @param wheelSize 槽位数，取2的幂
+     * @param expiredHandler 到期回调，在工作线程中执行，应当尽快返回
+     */
+    public TimingWheel(String name, long tickMillis, int wheelSize, Consumer<long[]> expiredHandler) {
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.expiredHandler = expiredHandler;
+        this.startMillis = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * 添加到期时间，已经过期的id在下一个tick到期
+     */
+    public void schedule(long id, long deadlineMillis) {
+        long tick = Math.max((deadlineMillis - startMillis + tickMillis - 1) / tickMillis, 0);
+        while (true) {
+            long current = currentTick;
+            long target = Math.max(tick, current + 1);
+            Slot slot = slots[(int) (target & mask)];
+            synchronized (slot) {
+                // 工作线程可能刚刚处理过这个槽位，重新计算
+                if (target > currentTick) {
+                    slot.add(id, target);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 时间轮中尚未到期的id数量
+     */
+    public long pending() {
+        long pending = 0;
+        for (Slot slot : slots) {
+            synchronized (slot) {
+                pending += slot.size;
+            }
+        }
+        return pending;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            try {
+                //1. 等待下一个tick
+                long sleepMillis = startMillis + tick * tickMillis - System.currentTimeMillis();
+                if (sleepMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                }
+                //2. 先推进当前tick，再处理槽位，之后添加的id不会再进入这个tick
+                currentTick = tick;
+                Slot slot = slots[(int) (tick & mask)];
+                long[] expired;
+                synchronized (slot) {
+                    expired = slot.expire(tick);
+                }
+                //3. 回调
+                if (expired.length > 0) {
+                    expiredHandler.accept(expired);
+                }
+                tick++;
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.error("时间轮回调异常", e);
+                tick++;
+            }
+        }
+    }
+
+    private static class Slot {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private long[] ticks = new long[INITIAL_CAPACITY];
+        private int size;
+
+        void add(long id, long tick) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+                ticks = Arrays.copyOf(ticks, size << 1);
+            }
+            ids[size] = id;
+            ticks[size] = tick;
+            size++;
+        }
+
+        /**
+         * 取出到期的id，未到期的前移压缩
+         */
+        long[] expire(long tick) {
+            int expiredCount = 0;
+            for (int i = 0; i < size; i++) {
+                if (ticks[i] <= tick) {
+                    expiredCount++;
+                }
+            }
+            if (expiredCount == 0) {
+                return new long[0];
+            }
+            long[] expired = new long[expiredCount];
+            int e = 0;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (ticks[i] <= tick) {
+                    expired[e++] = ids[i];
+                } else {
+                    ids[kept] = ids[i];
+                    ticks[kept] = ticks[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            // 高峰过后释放多余的容量
+            if (ids.length > INITIAL_CAPACITY && size < ids.length >> 2) {
+                int capacity = Math.max(INITIAL_CAPACITY, ids.length >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                ticks = Arrays.copyOf(ticks, capacity);
+            }
+            return expired;
+        }
+    }
+}
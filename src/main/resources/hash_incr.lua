@@ -0,0 +1,6 @@
+-- 只在hash缓存存在时自增字段，避免生成没有TTL、字段不全的缓存
+-- KEYS[1] 缓存key，ARGV[1] 字段名，ARGV[2] 增量
+if (redis.call('hget', KEYS[1], '_exists') ~= '1') then
+    return nil
+end
+return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])
@@ -0,0 +1,26 @@
+-- 机器id续期，并记录最近一次生成id的时间
+-- 1.参数列表
+-- 1.1.机器id的key
+local key = KEYS[1]
+-- 1.2.最近一次生成id的时间的key
+local lastKey = KEYS[2]
+-- 1.3.持有者标识
+local owner = ARGV[1]
+-- 1.4.有效期，毫秒
+local ttl = ARGV[2]
+-- 1.5.最近一次生成id的时间
+local last = ARGV[3]
+
+-- 2.脚本业务
+local current = redis.call('get', key)
+if (current == false) then
+    -- 2.1.已经过期（例如redis不可用期间），重新占用
+    redis.call('set', key, owner, 'PX', ttl)
+elseif (current ~= owner) then
+    -- 2.2.已经被其他节点占用
+    return 0
+else
+    redis.call('pexpire', key, ttl)
+end
+redis.call('set', lastKey, last)
+return 1
@@ -0,0 +1,33 @@
+-- 占用请求凭证，第一次请求继续处理，重试请求返回第一次的结果
+-- 1.参数列表
+-- 1.1.凭证key
+local key = KEYS[1]
+-- 1.2.已领取未使用的标记
+local issued = ARGV[1]
+-- 1.3.处理中的标记前缀，后面是处理的截止时间，毫秒
+local pending = ARGV[2]
+-- 1.4.当前时间，毫秒
+local now = tonumber(ARGV[3])
+-- 1.5.处理中标记的有效期，毫秒
+local pendingTtl = tonumber(ARGV[4])
+-- 1.6.凭证有效期，毫秒
+local ttl = ARGV[5]
+
+-- 2.脚本业务
+local value = redis.call('get', key)
+-- 2.1.没有领取过或已过期的凭证，返回nil
+if (value == false) then
+    return false
+end
+-- 2.2.未使用，或处理中但已超过截止时间（处理请求的节点宕机），标记为处理中，返回空字符串代表继续处理
+local isPending = string.sub(value, 1, string.len(pending)) == pending
+if (value == issued or (isPending and tonumber(string.sub(value, string.len(pending) + 1)) <= now)) then
+    redis.call('set', key, pending .. (now + pendingTtl), 'PX', ttl)
+    return ''
+end
+-- 2.3.处理中
+if (isPending) then
+    return pending
+end
+-- 2.4.已有结果
+return value
@@ -0,0 +1,26 @@
+-- 可重入锁加锁，锁是一个hash，field为持有者标识，value为重入次数
+-- 1.参数列表
+-- 1.1.锁key
+local key = KEYS[1]
+-- 1.2.持有者标识
+local owner = ARGV[1]
+-- 1.3.锁的有效期，毫秒
+local leaseTime = ARGV[2]
+
+-- 2.脚本业务
+-- 2.1.锁不存在，加锁并设置有效期
+if (redis.call('exists', key) == 0) then
+    redis.call('hincrby', key, owner, 1)
+    redis.call('pexpire', key, leaseTime)
+    return 0
+end
+-- 2.2.自己持有，重入次数加一；有效期只延长不缩短，避免缩短外层持有的租期
+if (redis.call('hexists', key, owner) == 1) then
+    redis.call('hincrby', key, owner, 1)
+    if (redis.call('pttl', key) < tonumber(leaseTime)) then
+        redis.call('pexpire', key, leaseTime)
+    end
+    return 0
+end
+-- 2.3.被其他人持有，返回剩余有效期，至少为1
+return math.max(redis.call('pttl', key), 1)
@@ -0,0 +1,6 @@
+-- 锁续期，只有持有者才能续期
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 1
+end
+return 0
@@ -0,0 +1,15 @@
+-- 归还超时取消订单的redis库存和下单资格
+-- 截止时间就是待归还的记录：删除成功才归还，重复执行不会重复归还
+-- KEYS[1] 订单支付截止时间zset，KEYS[2] 归还库存的key，KEYS[3] 已下单用户集合
+-- ARGV 依次为 订单id、用户id
+local returned = 0
+for i = 1, #ARGV, 2 do
+    if (redis.call('zrem', KEYS[1], ARGV[i]) == 1) then
+        redis.call('srem', KEYS[3], ARGV[i + 1])
+        returned = returned + 1
+    end
+end
+if (returned > 0) then
+    redis.call('incrby', KEYS[2], returned)
+end
+return returned
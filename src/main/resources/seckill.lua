@@ -0,0 +1,56 @@
+-- 1.参数列表
+-- 1.1.库存key
+local stockKey = KEYS[1]
+-- 1.2.已下单用户集合key
+local orderKey = KEYS[2]
+-- 1.3.秒杀时间key
+local voucherKey = KEYS[3]
+-- 1.4.订单消息队列key
+local streamKey = KEYS[4]
+-- 1.5.订单支付截止时间zset
+local deadlineKey = KEYS[5]
+-- 1.6.用户id
+local userId = ARGV[1]
+-- 1.7.当前时间，毫秒
+local now = tonumber(ARGV[2])
+-- 1.8.优惠券id
+local voucherId = ARGV[3]
+-- 1.9.订单id
+local orderId = ARGV[4]
+-- 1.10.支付截止时间，毫秒
+local deadline = ARGV[5]
+
+-- 2.脚本业务
+-- 2.1.判断秒杀时间，未加载到redis时返回5
+local window = redis.call('hmget', voucherKey, 'begin', 'end')
+if (window[1] == false or window[2] == false) then
+    return 5
+end
+if (now < tonumber(window[1])) then
+    -- 秒杀尚未开始，返回3
+    return 3
+end
+if (now > tonumber(window[2])) then
+    -- 秒杀已经结束，返回4
+    return 4
+end
+-- 2.2.判断库存是否充足
+local stock = tonumber(redis.call('get', stockKey))
+if (stock == nil or stock <= 0) then
+    -- 库存不足，返回1
+    return 1
+end
+-- 2.3.判断用户是否下单
+if (redis.call('sismember', orderKey, userId) == 1) then
+    -- 存在，说明是重复下单，返回2
+    return 2
+end
+-- 2.4.扣库存
+redis.call('incrby', stockKey, -1)
+-- 2.5.下单（保存用户）
+redis.call('sadd', orderKey, userId)
+-- 2.6.发送消息到队列中， XADD stream.orders * k1 v1 k2 v2 ...
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+-- 2.7.记录支付截止时间，超时未支付的订单会被取消
+redis.call('zadd', deadlineKey, deadline, orderId)
+return 0
@@ -0,0 +1,42 @@
+-- 分段库存模式的秒杀资格判断，库存已经在本地扣减，这里只判断秒杀时间和一人一单
+-- 1.参数列表
+-- 1.1.已下单用户集合key
+local orderKey = KEYS[1]
+-- 1.2.秒杀时间key
+local voucherKey = KEYS[2]
+-- 1.3.订单消息队列key
+local streamKey = KEYS[3]
+-- 1.4.订单支付截止时间zset
+local deadlineKey = KEYS[4]
+-- 1.5.用户id
+local userId = ARGV[1]
+-- 1.6.当前时间，毫秒
+local now = tonumber(ARGV[2])
+-- 1.7.优惠券id
+local voucherId = ARGV[3]
+-- 1.8.订单id
+local orderId = ARGV[4]
+-- 1.9.支付截止时间，毫秒
+local deadline = ARGV[5]
+
+-- 2.脚本业务
+-- 2.1.判断秒杀时间
+local window = redis.call('hmget', voucherKey, 'begin', 'end')
+if (window[1] == false or window[2] == false) then
+    return 5
+end
+if (now < tonumber(window[1])) then
+    return 3
+end
+if (now > tonumber(window[2])) then
+    return 4
+end
+-- 2.2.判断用户是否下单
+if (redis.call('sismember', orderKey, userId) == 1) then
+    return 2
+end
+-- 2.3.下单并发送消息到队列中
+redis.call('sadd', orderKey, userId)
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+redis.call('zadd', deadlineKey, deadline, orderId)
+return 0
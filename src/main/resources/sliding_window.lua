@@ -0,0 +1,24 @@
+-- 滑动窗口限流，用当前窗口和上一个窗口的计数按时间比例估算最近一个窗口内的请求数
+-- 1.参数列表
+-- 1.1.当前窗口的计数key
+local currentKey = KEYS[1]
+-- 1.2.上一个窗口的计数key
+local previousKey = KEYS[2]
+-- 1.3.当前窗口已经过去的比例
+local elapsed = tonumber(ARGV[1])
+-- 1.4.窗口内允许的请求数
+local limit = tonumber(ARGV[2])
+-- 1.5.窗口大小，毫秒
+local window = tonumber(ARGV[3])
+
+-- 2.脚本业务
+-- 2.1.上一个窗口按未过去的比例计入
+local previous = tonumber(redis.call('get', previousKey) or '0')
+local count = tonumber(redis.call('get', currentKey) or '0')
+if (previous * (1 - elapsed) + count >= limit) then
+    return 0
+end
+-- 2.2.放行并计数，保留两个窗口
+redis.call('incr', currentKey)
+redis.call('pexpire', currentKey, window * 2)
+return 1
@@ -0,0 +1,9 @@
+-- 从一个库存分段中租借一批库存
+-- KEYS[1] 分段库存key，ARGV[1] 希望租借的数量
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock == nil or stock <= 0) then
+    return 0
+end
+local lease = math.min(stock, tonumber(ARGV[1]))
+redis.call('decrby', KEYS[1], lease)
+return lease
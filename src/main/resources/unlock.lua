@@ -0,0 +1,22 @@
+-- 可重入锁解锁，重入次数减为0时删除锁并通知等待者
+-- 1.参数列表
+-- 1.1.锁key
+local key = KEYS[1]
+-- 1.2.解锁通知频道
+local channel = KEYS[2]
+-- 1.3.持有者标识
+local owner = ARGV[1]
+
+-- 2.脚本业务
+-- 2.1.不是自己持有的锁，不处理
+if (redis.call('hexists', key, owner) == 0) then
+    return -1
+end
+-- 2.2.重入次数减一，仍大于0时保持外层持有的有效期不变
+if (redis.call('hincrby', key, owner, -1) > 0) then
+    return 0
+end
+-- 2.3.删除锁并通知等待者
+redis.call('del', key)
+redis.call('publish', channel, key)
+return 1
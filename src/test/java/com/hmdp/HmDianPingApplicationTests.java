@@ -5,16 +5,26 @@ import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.RedisLockFactory;
+import com.hmdp.utils.RedisReentrantLock;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 
 import javax.annotation.Resource;
+import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.LOCK_WATCHDOG_LEASE_MILLIS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 @SpringBootTest
 class HmDianPingApplicationTests {
 
@@ -24,6 +34,10 @@ class HmDianPingApplicationTests {
     private CacheClient cacheClient;
     @Resource
     private RedisIdWorker redisIdWorker;
+    @Resource
+    private RedisLockFactory redisLockFactory;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
 
     private ExecutorService es = Executors.newFixedThreadPool(500);
 
@@ -53,5 +67,64 @@ class HmDianPingApplicationTests {
         cacheClient.setWithLogicalExpire(RedisConstants.CACHE_SHOP_KEY + 1L, shop, 10L, TimeUnit.MINUTES);
     }
 
+    @Test
+    void testReentrantLockReentry() throws InterruptedException {
+        String key = "lock:test:reentry";
+        RedisReentrantLock lock = redisLockFactory.getLock("test:reentry");
+        try {
+            // 同一线程重复加锁，重入次数记录在hash中
+            assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+            assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList("2"), stringRedisTemplate.opsForHash().values(key));
+            // 解锁一次只减少重入次数
+            lock.unlock();
+            assertEquals(Collections.singletonList("1"), stringRedisTemplate.opsForHash().values(key));
+            // 次数减为0时删除锁
+            lock.unlock();
+            assertEquals(Boolean.FALSE, stringRedisTemplate.hasKey(key));
+        } finally {
+            stringRedisTemplate.delete(key);
+        }
+    }
 
+    @Test
+    void testReentrantLockUnlockByOtherThread() throws Exception {
+        String key = "lock:test:owner";
+        RedisReentrantLock lock = redisLockFactory.getLock("test:owner");
+        assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+        try {
+            // 其他线程解锁不生效，也获取不到锁
+            Future<Boolean> other = es.submit(() -> {
+                RedisReentrantLock otherLock = redisLockFactory.getLock("test:owner");
+                otherLock.unlock();
+                return otherLock.tryLock(0, TimeUnit.SECONDS);
+            });
+            assertFalse(other.get());
+            assertEquals(Collections.singletonList("1"), stringRedisTemplate.opsForHash().values(key));
+        } finally {
+            lock.unlock();
+        }
+        assertEquals(Boolean.FALSE, stringRedisTemplate.hasKey(key));
+    }
+
+    @Test
+    void testReentrantLockWatchdog() throws InterruptedException {
+        String key = "lock:test:watchdog";
+        RedisReentrantLock lock = redisLockFactory.getLock("test:watchdog");
+        assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+        try {
+            // 重入时指定较短的有效期，不会缩短外层看门狗持有的租期
+            assertTrue(lock.tryLock(1));
+            assertTrue(stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS) > TimeUnit.SECONDS.toMillis(1));
+            // 内层解锁不停止看门狗
+            lock.unlock();
+            // 超过1/3租期后看门狗已经续期，剩余有效期大于不续期时的值
+            Thread.sleep(LOCK_WATCHDOG_LEASE_MILLIS / 3 + 1000);
+            Long ttl = stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+            assertTrue(ttl != null && ttl > LOCK_WATCHDOG_LEASE_MILLIS * 2 / 3);
+        } finally {
+            lock.unlock();
+        }
+        assertEquals(Boolean.FALSE, stringRedisTemplate.hasKey(key));
+    }
 }